@@ -0,0 +1,82 @@
+package net.covers1624.gcp;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.CRC32;
+
+/**
+ * Compares buffer sizes and kinds when reading artifacts.
+ * <p>
+ * Uses CRC32 as the consumer, as it's cheap enough not to hide the cost of the reads.
+ * <p>
+ * Created by covers1624 on 18/10/26.
+ */
+@State (Scope.Benchmark)
+@BenchmarkMode (Mode.AverageTime)
+@OutputTimeUnit (TimeUnit.MILLISECONDS)
+public class BufferBenchmark {
+
+    @Param ({ "1", "64", "1024" })
+    public int sizeMb;
+
+    @Param ({ "2048", "4096", "65536", "1048576" })
+    public int bufferSize;
+
+    private Path dir;
+    private Path file;
+
+    @Setup (Level.Trial)
+    public void setup() throws IOException {
+        dir = Files.createTempDirectory("buffer-benchmark");
+        file = dir.resolve("artifact.jar");
+        SyntheticArtifacts.writeBinary(file, sizeMb * 1024L * 1024L);
+    }
+
+    @TearDown (Level.Trial)
+    public void tearDown() throws IOException {
+        Utils.deleteDirectory(dir);
+    }
+
+    @Benchmark
+    public long heapStream() throws IOException {
+        CRC32 crc = new CRC32();
+        try (InputStream is = Files.newInputStream(file)) {
+            byte[] buf = new byte[bufferSize];
+            int len;
+            while ((len = is.read(buf)) != -1) {
+                crc.update(buf, 0, len);
+            }
+        }
+        return crc.getValue();
+    }
+
+    @Benchmark
+    public long heapChannel() throws IOException {
+        return readChannel(ByteBuffer.allocate(bufferSize));
+    }
+
+    @Benchmark
+    public long directChannel() throws IOException {
+        return readChannel(ByteBuffer.allocateDirect(bufferSize));
+    }
+
+    private long readChannel(ByteBuffer buf) throws IOException {
+        CRC32 crc = new CRC32();
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            while (channel.read(buf) != -1) {
+                buf.flip();
+                crc.update(buf);
+                buf.clear();
+            }
+        }
+        return crc.getValue();
+    }
+}
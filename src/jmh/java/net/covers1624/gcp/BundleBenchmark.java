@@ -0,0 +1,123 @@
+package net.covers1624.gcp;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures end to end bundle creation for a typical publication, under different
+ * compression policies.
+ * <p>
+ * The bundle is written to a null stream, so only assembly is measured.
+ * <p>
+ * Created by covers1624 on 18/10/26.
+ */
+@State (Scope.Benchmark)
+@BenchmarkMode (Mode.AverageTime)
+@OutputTimeUnit (TimeUnit.MILLISECONDS)
+public class BundleBenchmark {
+
+    /**
+     * The total size of all artifacts in the publication.
+     */
+    @Param ({ "1", "64", "1024" })
+    public int sizeMb;
+
+    @Param ({ "default", "deflateAll", "storeAll" })
+    public String policy;
+
+    private Path dir;
+    private Path scatterDir;
+    private final List<Artifact> artifacts = new ArrayList<>();
+    private CompressionPolicy compression;
+
+    @Setup (Level.Trial)
+    public void setup() throws IOException {
+        dir = Files.createTempDirectory("bundle-benchmark");
+        scatterDir = Files.createDirectories(dir.resolve("scatter"));
+        long total = sizeMb * 1024L * 1024L;
+        artifacts.add(binary("example-1.0.jar", "jar", total * 60 / 100));
+        artifacts.add(binary("example-1.0-sources.jar", "jar", total * 25 / 100));
+        artifacts.add(binary("example-1.0-javadoc.jar", "jar", total * 10 / 100));
+        artifacts.add(text("example-1.0.pom", "pom", Math.min(total * 5 / 100 / 2, 64 * 1024)));
+        artifacts.add(text("example-1.0.module", "module", Math.min(total * 5 / 100 / 2, 64 * 1024)));
+
+        compression = new CompressionPolicy();
+        switch (policy) {
+            case "default":
+                break;
+            case "deflateAll":
+                compression.clear();
+                break;
+            case "storeAll":
+                compression.clear();
+                compression.store("jar", "pom", "module", "md5", "sha1", "sha256", "sha512");
+                break;
+            default:
+                throw new IllegalArgumentException("Unknown policy " + policy);
+        }
+    }
+
+    @TearDown (Level.Trial)
+    public void tearDown() throws IOException {
+        Utils.deleteDirectory(dir);
+    }
+
+    @Benchmark
+    public long createBundle() throws IOException {
+        List<BundleEntry> entries = new ArrayList<>();
+        for (int i = 0; i < artifacts.size(); i++) {
+            Artifact artifact = artifacts.get(i);
+            entries.addAll(CentralPublisher.prepareFile(artifact.name, artifact.extension, artifact.file, compression, null, null, scatterDir.resolve(i + ".deflate"), null));
+        }
+        NullOutputStream os = new NullOutputStream();
+        BundleWriter.writeTo(entries, os);
+        return os.count;
+    }
+
+    private Artifact binary(String name, String extension, long size) throws IOException {
+        Path file = dir.resolve(name);
+        SyntheticArtifacts.writeBinary(file, size);
+        return new Artifact(name, extension, file);
+    }
+
+    private Artifact text(String name, String extension, long size) throws IOException {
+        Path file = dir.resolve(name);
+        SyntheticArtifacts.writeText(file, size);
+        return new Artifact(name, extension, file);
+    }
+
+    private static final class Artifact {
+
+        public final String name;
+        public final String extension;
+        public final Path file;
+
+        private Artifact(String name, String extension, Path file) {
+            this.name = name;
+            this.extension = extension;
+            this.file = file;
+        }
+    }
+
+    private static final class NullOutputStream extends OutputStream {
+
+        public long count;
+
+        @Override
+        public void write(int b) {
+            count++;
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) {
+            count += len;
+        }
+    }
+}
@@ -0,0 +1,75 @@
+package net.covers1624.gcp;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares writing a prepared bundle to disk through a stream, against transferring
+ * file backed entries directly between channels.
+ * <p>
+ * All artifacts are stored, so only the cost of moving their data is measured.
+ * <p>
+ * Created by covers1624 on 18/10/26.
+ */
+@State (Scope.Benchmark)
+@BenchmarkMode (Mode.AverageTime)
+@OutputTimeUnit (TimeUnit.MILLISECONDS)
+public class BundleWriteBenchmark {
+
+    /**
+     * The total size of all artifacts in the publication.
+     */
+    @Param ({ "1", "64", "1024" })
+    public int sizeMb;
+
+    private Path dir;
+    private Path bundle;
+    private List<BundleEntry> entries;
+
+    @Setup (Level.Trial)
+    public void setup() throws IOException {
+        dir = Files.createTempDirectory("bundle-write-benchmark");
+        bundle = dir.resolve("bundle.zip");
+        Path scatterDir = Files.createDirectories(dir.resolve("scatter"));
+        CompressionPolicy compression = new CompressionPolicy();
+        compression.store("jar", "pom", "md5", "sha1", "sha256", "sha512");
+
+        long total = sizeMb * 1024L * 1024L;
+        entries = new ArrayList<>();
+        entries.addAll(prepare("example-1.0.jar", "jar", total * 70 / 100, compression, scatterDir));
+        entries.addAll(prepare("example-1.0-sources.jar", "jar", total * 20 / 100, compression, scatterDir));
+        entries.addAll(prepare("example-1.0-javadoc.jar", "jar", total * 10 / 100, compression, scatterDir));
+    }
+
+    @TearDown (Level.Trial)
+    public void tearDown() throws IOException {
+        Utils.deleteDirectory(dir);
+    }
+
+    @Benchmark
+    public long stream() throws IOException {
+        try (OutputStream os = Files.newOutputStream(bundle)) {
+            BundleWriter.writeTo(entries, os);
+        }
+        return Files.size(bundle);
+    }
+
+    @Benchmark
+    public long channel() throws IOException {
+        BundleWriter.writeTo(entries, bundle, null);
+        return Files.size(bundle);
+    }
+
+    private List<BundleEntry> prepare(String name, String extension, long size, CompressionPolicy compression, Path scatterDir) throws IOException {
+        Path file = dir.resolve(name);
+        SyntheticArtifacts.writeBinary(file, size);
+        return CentralPublisher.prepareFile(name, extension, file, compression, null, null, scatterDir.resolve(name + ".deflate"), null);
+    }
+}
@@ -0,0 +1,79 @@
+package net.covers1624.gcp;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares hashing each algorithm individually, against hashing all bundle
+ * algorithms in a single pass.
+ * <p>
+ * Created by covers1624 on 18/10/26.
+ */
+@State (Scope.Benchmark)
+@BenchmarkMode (Mode.AverageTime)
+@OutputTimeUnit (TimeUnit.MILLISECONDS)
+public class HashingBenchmark {
+
+    @Param ({ "1", "64", "1024" })
+    public int sizeMb;
+
+    private Path dir;
+    private Path file;
+
+    @Setup (Level.Trial)
+    public void setup() throws IOException {
+        dir = Files.createTempDirectory("hashing-benchmark");
+        file = dir.resolve("artifact.jar");
+        SyntheticArtifacts.writeBinary(file, sizeMb * 1024L * 1024L);
+    }
+
+    @TearDown (Level.Trial)
+    public void tearDown() throws IOException {
+        Utils.deleteDirectory(dir);
+    }
+
+    @Benchmark
+    public String md5() throws IOException {
+        return Utils.hashFile("MD5", file);
+    }
+
+    @Benchmark
+    public String sha1() throws IOException {
+        return Utils.hashFile("SHA-1", file);
+    }
+
+    @Benchmark
+    public String sha256() throws IOException {
+        return Utils.hashFile("SHA-256", file);
+    }
+
+    @Benchmark
+    public String sha512() throws IOException {
+        return Utils.hashFile("SHA-512", file);
+    }
+
+    /**
+     * All bundle algorithms, reading the file once per algorithm.
+     */
+    @Benchmark
+    public String allSeparately() throws IOException {
+        String last = null;
+        for (String alg : MultiHasher.BUNDLE_ALGORITHMS) {
+            last = Utils.hashFile(alg, file);
+        }
+        return last;
+    }
+
+    /**
+     * All bundle algorithms, reading the file once.
+     */
+    @Benchmark
+    public Map<String, String> allSinglePass() throws IOException {
+        return MultiHasher.hashFile(file, MultiHasher.BUNDLE_ALGORITHMS);
+    }
+}
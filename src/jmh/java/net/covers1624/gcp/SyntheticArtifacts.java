@@ -0,0 +1,52 @@
+package net.covers1624.gcp;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Random;
+
+/**
+ * Generates synthetic artifacts for benchmarks.
+ * <p>
+ * Created by covers1624 on 18/10/26.
+ */
+final class SyntheticArtifacts {
+
+    private SyntheticArtifacts() {
+    }
+
+    /**
+     * Write a file of random, incompressible, bytes. Behaves like a jar.
+     */
+    public static void writeBinary(Path file, long size) throws IOException {
+        Random rand = new Random(size);
+        byte[] buf = new byte[Utils.BUFFER_SIZE];
+        try (OutputStream os = Files.newOutputStream(file)) {
+            long remaining = size;
+            while (remaining > 0) {
+                rand.nextBytes(buf);
+                int len = (int) Math.min(buf.length, remaining);
+                os.write(buf, 0, len);
+                remaining -= len;
+            }
+        }
+    }
+
+    /**
+     * Write a file of repetitive xml-like text. Behaves like a pom or module file.
+     */
+    public static void writeText(Path file, long size) throws IOException {
+        Random rand = new Random(size);
+        try (OutputStream os = Files.newOutputStream(file)) {
+            long remaining = size;
+            while (remaining > 0) {
+                byte[] line = ("    <dependency><artifactId>artifact-" + rand.nextInt(1000) + "</artifactId></dependency>\n").getBytes(StandardCharsets.UTF_8);
+                int len = (int) Math.min(line.length, remaining);
+                os.write(line, 0, len);
+                remaining -= len;
+            }
+        }
+    }
+}
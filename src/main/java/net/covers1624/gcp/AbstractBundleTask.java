@@ -0,0 +1,203 @@
+package net.covers1624.gcp;
+
+import org.gradle.api.DefaultTask;
+import org.gradle.api.InvalidUserDataException;
+import org.gradle.api.file.ConfigurableFileCollection;
+import org.gradle.api.file.ProjectLayout;
+import org.gradle.api.file.RegularFileProperty;
+import org.gradle.api.model.ObjectFactory;
+import org.gradle.api.provider.ListProperty;
+import org.gradle.api.provider.Property;
+import org.gradle.api.provider.ProviderFactory;
+import org.gradle.api.publish.maven.MavenPublication;
+import org.gradle.api.publish.maven.internal.publication.MavenPublicationInternal;
+import org.gradle.api.tasks.Internal;
+import org.gradle.api.tasks.PathSensitivity;
+import org.gradle.workers.WorkerExecutor;
+
+import javax.inject.Inject;
+import java.util.List;
+import java.util.stream.Collectors;
+
+/**
+ * Properties shared by all tasks which assemble a bundle from publications.
+ * <p>
+ * Created by covers1624 on 18/10/26.
+ */
+public abstract class AbstractBundleTask extends DefaultTask {
+
+    private final ListProperty<PublicationSpec> publications = getObjects().listProperty(PublicationSpec.class);
+    private final ConfigurableFileCollection publishableFiles = getObjects().fileCollection();
+    private final Property<CompressionPolicy> compression = getObjects().property(CompressionPolicy.class).convention(new CompressionPolicy());
+    private final Property<ChecksumCacheService> checksumCache = getObjects().property(ChecksumCacheService.class);
+    private final Property<Boolean> useChecksumCache = getObjects().property(Boolean.class).convention(true);
+    private final Property<Integer> assemblyParallelism = getObjects().property(Integer.class).convention(1);
+    private final Property<Boolean> verifyChecksums = getObjects().property(Boolean.class).convention(false);
+    private final Property<String> signingKeyId = getObjects().property(String.class);
+    private final Property<String> signingKey = getObjects().property(String.class);
+    private final Property<String> signingPassword = getObjects().property(String.class);
+    private final RegularFileProperty reportFile = getObjects().fileProperty()
+            .convention(getLayout().getBuildDirectory().file("reports/centralPublisher/" + getName() + ".json"));
+
+    public AbstractBundleTask() {
+        getInputs()
+                .files(publishableFiles)
+                .withPropertyName("publication.publishableFiles")
+                .withPathSensitivity(PathSensitivity.NAME_ONLY);
+    }
+
+    @Inject
+    protected abstract ObjectFactory getObjects();
+
+    @Inject
+    protected abstract ProviderFactory getProviders();
+
+    @Inject
+    protected abstract ProjectLayout getLayout();
+
+    @Inject
+    protected abstract WorkerExecutor getWorkerExecutor();
+
+    /**
+     * The publications to bundle. If more than one publication is provided, they are
+     * all published in a single bundle, as a single deployment.
+     */
+    @Internal
+    public ListProperty<PublicationSpec> getPublications() {
+        return publications;
+    }
+
+    @Internal
+    public Property<CompressionPolicy> getCompression() {
+        return compression;
+    }
+
+    /**
+     * The checksum cache to use. If absent, artifacts are always re-hashed.
+     */
+    @Internal
+    public Property<ChecksumCacheService> getChecksumCache() {
+        return checksumCache;
+    }
+
+    /**
+     * If {@link #getChecksumCache()} should be used.
+     */
+    @Internal
+    public Property<Boolean> getUseChecksumCache() {
+        return useChecksumCache;
+    }
+
+    /**
+     * The maximum number of artifacts to hash and compress concurrently whilst assembling the bundle.
+     */
+    @Internal
+    public Property<Integer> getAssemblyParallelism() {
+        return assemblyParallelism;
+    }
+
+    /**
+     * If every file in the bundle should be re-read after assembly, to verify its checksums.
+     */
+    @Internal
+    public Property<Boolean> getVerifyChecksums() {
+        return verifyChecksums;
+    }
+
+    /**
+     * The id of the key in {@link #getSigningKey()} to sign with. If absent, the first key is used.
+     */
+    @Internal
+    public Property<String> getSigningKeyId() {
+        return signingKeyId;
+    }
+
+    /**
+     * An ASCII armored secret key. If present, all artifacts are signed whilst creating the bundle.
+     * <p>
+     * Should be sourced from {@link ProviderFactory}, such as {@link ProviderFactory#gradleProperty},
+     * so the key is not stored in the configuration cache.
+     */
+    @Internal
+    public Property<String> getSigningKey() {
+        return signingKey;
+    }
+
+    /**
+     * The password for {@link #getSigningKey()}. Like the key, should be sourced from {@link ProviderFactory}.
+     */
+    @Internal
+    public Property<String> getSigningPassword() {
+        return signingPassword;
+    }
+
+    /**
+     * The file to write a JSON report of the task's timings to.
+     */
+    @Internal
+    public RegularFileProperty getReportFile() {
+        return reportFile;
+    }
+
+    @Internal
+    protected ConfigurableFileCollection getPublishableFiles() {
+        return publishableFiles;
+    }
+
+    /**
+     * Copy the properties every bundle work action needs to the given worker parameters.
+     *
+     * @param params The parameters.
+     */
+    protected void configureWork(CreateBundleWorkAction.BundleParameters params) {
+        List<PublicationSpec> pubs = publications.get();
+        if (pubs.isEmpty()) throw new InvalidUserDataException("Property 'publication' is required.");
+
+        params.getPublicationNames().set(pubs.stream().map(e -> e.name).collect(Collectors.joining(", ")));
+        params.getPublicationCoordinates().set(pubs.stream().map(PublicationSpec::getCoordinates).collect(Collectors.joining(", ")));
+        params.getTemporaryDir().set(getTemporaryDir());
+        params.getReportFile().set(getReportFile());
+        params.getTaskPath().set(getPath());
+    }
+
+    /**
+     * Check the assembly properties are valid, and copy them, along with those from
+     * {@link #configureWork}, to the given worker parameters.
+     *
+     * @param params The parameters.
+     */
+    protected void configureAssembly(CreateBundleWorkAction.AssemblyParameters params) {
+        configureWork(params);
+        if (getSigningKey().isPresent() && !getSigningPassword().isPresent()) {
+            throw new InvalidUserDataException("Property 'signingPassword' is required when 'signingKey' is set.");
+        }
+
+        params.getPublications().set(publications);
+        params.getCompression().set(getCompression());
+        if (getUseChecksumCache().get()) {
+            params.getChecksumCache().set(getChecksumCache());
+        }
+        params.getAssemblyParallelism().set(getAssemblyParallelism());
+        params.getVerifyChecksums().set(getVerifyChecksums());
+        params.getSigningKeyId().set(getSigningKeyId());
+        params.getSigningKey().set(getSigningKey());
+        params.getSigningPassword().set(getSigningPassword());
+    }
+
+    public void setPublication(MavenPublication publication) {
+        publications.empty();
+        publishableFiles.setFrom();
+        if (publication != null) {
+            addPublication(publication);
+        }
+    }
+
+    public void addPublication(MavenPublication publication) {
+        if (!(publication instanceof MavenPublicationInternal)) {
+            throw new InvalidUserDataException("Expected MavenPublicationInternal. Got: " + publication.getClass().getName());
+        }
+        MavenPublicationInternal internal = (MavenPublicationInternal) publication;
+        publications.add(getProviders().provider(() -> PublicationSpec.of(internal)));
+        publishableFiles.from(internal.getPublishableArtifacts().getFiles());
+    }
+}
@@ -0,0 +1,131 @@
+package net.covers1624.gcp;
+
+import org.bouncycastle.bcpg.ArmoredOutputStream;
+import org.bouncycastle.bcpg.HashAlgorithmTags;
+import org.bouncycastle.openpgp.*;
+import org.bouncycastle.openpgp.operator.bc.BcKeyFingerprintCalculator;
+import org.bouncycastle.openpgp.operator.bc.BcPBESecretKeyDecryptorBuilder;
+import org.bouncycastle.openpgp.operator.bc.BcPGPContentSignerBuilder;
+import org.bouncycastle.openpgp.operator.bc.BcPGPDigestCalculatorProvider;
+import org.gradle.api.InvalidUserDataException;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Iterator;
+
+/**
+ * Produces detached, ASCII armored, OpenPGP signatures from an in-memory secret key.
+ * <p>
+ * Equivalent to the {@code signing} plugin's {@code useInMemoryPgpKeys}, except
+ * data is fed in as it is read, so artifacts are signed in the same pass that
+ * hashes and compresses them.
+ * <p>
+ * A signer may be shared between threads, each {@link Signature} may not.
+ * <p>
+ * Created by covers1624 on 18/10/26.
+ */
+class ArtifactSigner {
+
+    private final PGPPrivateKey privateKey;
+    private final PGPPublicKey publicKey;
+
+    private ArtifactSigner(PGPPrivateKey privateKey, PGPPublicKey publicKey) {
+        this.privateKey = privateKey;
+        this.publicKey = publicKey;
+    }
+
+    /**
+     * Load a signer from an ASCII armored secret key.
+     *
+     * @param keyId    The id of the key, or subkey, to sign with. Either the short or long id in hex,
+     *                 optionally prefixed with {@code 0x}. If {@code null}, the first key in the key ring is used.
+     * @param key      The ASCII armored secret key ring.
+     * @param password The password for the key.
+     * @return The signer.
+     */
+    public static ArtifactSigner load(@Nullable String keyId, String key, String password) {
+        PGPSecretKey secretKey;
+        try (InputStream is = PGPUtil.getDecoderStream(new ByteArrayInputStream(key.getBytes(StandardCharsets.UTF_8)))) {
+            secretKey = findKey(new PGPSecretKeyRingCollection(is, new BcKeyFingerprintCalculator()), keyId);
+        } catch (IOException | PGPException ex) {
+            throw new InvalidUserDataException("Failed to read signing key.", ex);
+        }
+        try {
+            PGPPrivateKey privateKey = secretKey.extractPrivateKey(
+                    new BcPBESecretKeyDecryptorBuilder(new BcPGPDigestCalculatorProvider()).build(password.toCharArray())
+            );
+            return new ArtifactSigner(privateKey, secretKey.getPublicKey());
+        } catch (PGPException ex) {
+            throw new InvalidUserDataException("Failed to unlock signing key. Is the password correct?", ex);
+        }
+    }
+
+    private static PGPSecretKey findKey(PGPSecretKeyRingCollection rings, @Nullable String keyId) {
+        Iterator<PGPSecretKeyRing> itr = rings.getKeyRings();
+        if (!itr.hasNext()) throw new InvalidUserDataException("Signing key does not contain any secret keys.");
+        if (keyId == null) return itr.next().getSecretKey();
+
+        String hex = keyId.startsWith("0x") || keyId.startsWith("0X") ? keyId.substring(2) : keyId;
+        long id;
+        try {
+            id = Long.parseUnsignedLong(hex, 16);
+        } catch (NumberFormatException ex) {
+            throw new InvalidUserDataException("Invalid signing key id '" + keyId + "'. Expected the short or long key id in hex.", ex);
+        }
+        boolean shortId = hex.length() <= 8;
+        while (itr.hasNext()) {
+            for (PGPSecretKey secretKey : itr.next()) {
+                long candidate = shortId ? secretKey.getKeyID() & 0xFFFFFFFFL : secretKey.getKeyID();
+                if (candidate == id) return secretKey;
+            }
+        }
+        throw new InvalidUserDataException("Signing key does not contain key " + keyId + ".");
+    }
+
+    /**
+     * Begin a new signature.
+     *
+     * @return The signature.
+     */
+    public Signature begin() throws IOException {
+        PGPSignatureGenerator generator = new PGPSignatureGenerator(new BcPGPContentSignerBuilder(publicKey.getAlgorithm(), HashAlgorithmTags.SHA512), publicKey);
+        try {
+            generator.init(PGPSignature.BINARY_DOCUMENT, privateKey);
+        } catch (PGPException ex) {
+            throw new IOException("Failed to initialize signature.", ex);
+        }
+        return new Signature(generator);
+    }
+
+    public static final class Signature {
+
+        private final PGPSignatureGenerator generator;
+
+        private Signature(PGPSignatureGenerator generator) {
+            this.generator = generator;
+        }
+
+        public void update(byte[] buf, int off, int len) {
+            generator.update(buf, off, len);
+        }
+
+        /**
+         * Finish the signature.
+         *
+         * @return The ASCII armored signature.
+         */
+        public byte[] finish() throws IOException {
+            ByteArrayOutputStream bos = new ByteArrayOutputStream();
+            try (ArmoredOutputStream aos = new ArmoredOutputStream(bos)) {
+                generator.generate().encode(aos);
+            } catch (PGPException ex) {
+                throw new IOException("Failed to generate signature.", ex);
+            }
+            return bos.toByteArray();
+        }
+    }
+}
@@ -0,0 +1,106 @@
+package net.covers1624.gcp;
+
+import org.gradle.api.DefaultTask;
+import org.gradle.api.InvalidUserDataException;
+import org.gradle.api.artifacts.PublishException;
+import org.gradle.api.credentials.PasswordCredentials;
+import org.gradle.api.provider.ListProperty;
+import org.gradle.api.provider.Property;
+import org.gradle.api.tasks.Internal;
+import org.gradle.api.tasks.TaskAction;
+import org.gradle.api.tasks.UntrackedTask;
+import org.gradle.api.tasks.options.Option;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Waits for any number of deployments to reach a given state.
+ * <p>
+ * All deployments are polled concurrently on a shared scheduler.
+ * <p>
+ * Created by covers1624 on 18/10/26.
+ */
+@UntrackedTask (because = "This task polls the central publishing portal. There is nothing to cache.")
+public abstract class AwaitCentralDeploymentsTask extends DefaultTask {
+
+    private static final int MAX_THREADS = 4;
+
+    private final ListProperty<String> deploymentIds = getProject().getObjects().listProperty(String.class);
+    private final Property<String> targetState = getProject().getObjects().property(String.class).convention(DeploymentState.VALIDATED.name());
+    private final Property<Duration> timeout = getProject().getObjects().property(Duration.class).convention(Duration.ofMinutes(30));
+    private final Property<PasswordCredentials> credentials = getProject().getObjects().property(PasswordCredentials.class);
+    private final Property<CentralPortalService> portal = getProject().getObjects().property(CentralPortalService.class);
+
+    @Internal
+    public ListProperty<String> getDeploymentIds() {
+        return deploymentIds;
+    }
+
+    @Option (option = "deployment", description = "A deployment id to wait for. May be specified multiple times.")
+    public void setDeploymentIdsOption(List<String> ids) {
+        deploymentIds.addAll(ids);
+    }
+
+    @Internal
+    public Property<String> getTargetState() {
+        return targetState;
+    }
+
+    @Option (option = "state", description = "The deployment state to wait for. Defaults to VALIDATED.")
+    public void setTargetStateOption(String state) {
+        targetState.set(state);
+    }
+
+    @Internal
+    public Property<Duration> getTimeout() {
+        return timeout;
+    }
+
+    @Internal
+    public Property<PasswordCredentials> getCredentials() {
+        return credentials;
+    }
+
+    @Internal
+    public Property<CentralPortalService> getPortal() {
+        return portal;
+    }
+
+    @TaskAction
+    public void await() {
+        List<String> ids = getDeploymentIds().get();
+        if (ids.isEmpty()) throw new InvalidUserDataException("No deployment ids specified.");
+
+        PasswordCredentials credentials = getCredentials().getOrNull();
+        if (credentials == null) throw new InvalidUserDataException("Property 'credentials' is required.");
+
+        DeploymentState target = DeploymentState.parse(getTargetState().get());
+        getLogger().lifecycle("Waiting for {} deployments to reach {}..", ids.size(), target);
+
+        List<String> failures = new ArrayList<>();
+        try (DeploymentStatusPoller poller = new DeploymentStatusPoller(getPortal().get().getApi(), credentials, DeploymentStatusPoller.DEFAULT_BACKOFF, Math.min(ids.size(), MAX_THREADS))) {
+            Map<String, CompletableFuture<DeploymentStatus>> futures = new LinkedHashMap<>();
+            for (String id : ids) {
+                futures.put(id, poller.await(id, target, getTimeout().get()));
+            }
+            for (Map.Entry<String, CompletableFuture<DeploymentStatus>> entry : futures.entrySet()) {
+                try {
+                    DeploymentStatus status = Utils.join(entry.getValue());
+                    getLogger().lifecycle(" Deployment {} is {}.", entry.getKey(), status.state);
+                } catch (IOException | RuntimeException ex) {
+                    getLogger().error(" Deployment {} did not reach {}.", entry.getKey(), target, ex);
+                    failures.add(entry.getKey());
+                }
+            }
+        }
+        if (!failures.isEmpty()) {
+            throw new PublishException("Deployments did not reach " + target + ": " + String.join(", ", failures));
+        }
+    }
+}
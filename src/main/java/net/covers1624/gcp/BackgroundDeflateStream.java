@@ -0,0 +1,165 @@
+package net.covers1624.gcp;
+
+import org.jetbrains.annotations.Nullable;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.concurrent.*;
+import java.util.zip.CRC32;
+import java.util.zip.CheckedInputStream;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+
+/**
+ * Produces the raw deflate data of a file, compressing it on a background thread
+ * whilst previously compressed data is read from this stream.
+ * <p>
+ * Compression of the file overlaps with whatever the reader does with the data,
+ * such as sending it over the network. At most {@code MAX_CHUNKS} chunks are
+ * buffered ahead of the reader, nothing is written to disk.
+ * <p>
+ * Created by covers1624 on 18/10/26.
+ */
+class BackgroundDeflateStream extends InputStream {
+
+    private static final int CHUNK_SIZE = 64 * 1024;
+    private static final int MAX_CHUNKS = 16;
+    private static final byte[] EOF = new byte[0];
+
+    private static final ExecutorService EXECUTOR = Executors.newCachedThreadPool(r -> {
+        Thread thread = new Thread(r, "Bundle Deflater");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    private final Path file;
+    private final BlockingQueue<byte[]> chunks = new ArrayBlockingQueue<>(MAX_CHUNKS);
+    private final Future<?> task;
+    private volatile @Nullable IOException error;
+
+    private byte @Nullable [] chunk;
+    private int pos;
+
+    /**
+     * @param file        The file to compress.
+     * @param level       The {@link Deflater} level.
+     * @param expectedCrc The CRC32 the file is expected to have, checked once the file has been fully read.
+     */
+    public BackgroundDeflateStream(Path file, int level, long expectedCrc) {
+        this.file = file;
+        task = EXECUTOR.submit(() -> produce(level, expectedCrc));
+    }
+
+    private void produce(int level, long expectedCrc) {
+        Deflater deflater = new Deflater(level, true);
+        CRC32 crc = new CRC32();
+        try {
+            try (InputStream is = new CheckedInputStream(Files.newInputStream(file), crc);
+                 OutputStream os = new DeflaterOutputStream(new ChunkOutputStream(), deflater, Utils.BUFFER_SIZE)) {
+                byte[] buf = new byte[Utils.BUFFER_SIZE];
+                int len;
+                while ((len = is.read(buf)) != -1) {
+                    os.write(buf, 0, len);
+                }
+            }
+            if (crc.getValue() != expectedCrc) {
+                throw new IOException("File " + file + " changed after it was hashed.");
+            }
+        } catch (InterruptedIOException ex) {
+            // Cancelled by the reader.
+            return;
+        } catch (IOException ex) {
+            error = ex;
+        } finally {
+            deflater.end();
+        }
+        try {
+            chunks.put(EOF);
+        } catch (InterruptedException ignored) {
+            // Cancelled by the reader.
+        }
+    }
+
+    @Override
+    public int read() throws IOException {
+        byte[] b = new byte[1];
+        return read(b, 0, 1) == -1 ? -1 : b[0] & 0xFF;
+    }
+
+    @Override
+    public int read(byte[] b, int off, int len) throws IOException {
+        if (len == 0) return 0;
+        while (chunk == null || chunk != EOF && pos == chunk.length) {
+            try {
+                chunk = chunks.take();
+            } catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException("Interrupted whilst waiting for compressed data.");
+            }
+            pos = 0;
+        }
+        if (chunk == EOF) {
+            IOException ex = error;
+            if (ex != null) throw new IOException("Failed to compress " + file, ex);
+            return -1;
+        }
+        int n = Math.min(len, chunk.length - pos);
+        System.arraycopy(chunk, pos, b, off, n);
+        pos += n;
+        return n;
+    }
+
+    @Override
+    public void close() {
+        task.cancel(true);
+    }
+
+    // Hands full chunks over to the reader, blocking whilst the reader is too far behind.
+    private final class ChunkOutputStream extends OutputStream {
+
+        private byte[] buf = new byte[CHUNK_SIZE];
+        private int count;
+
+        @Override
+        public void write(int b) throws IOException {
+            write(new byte[] { (byte) b }, 0, 1);
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            while (len > 0) {
+                int n = Math.min(len, buf.length - count);
+                System.arraycopy(b, off, buf, count, n);
+                count += n;
+                off += n;
+                len -= n;
+                if (count == buf.length) {
+                    emit();
+                }
+            }
+        }
+
+        @Override
+        public void close() throws IOException {
+            if (count != 0) {
+                emit();
+            }
+        }
+
+        private void emit() throws IOException {
+            byte[] full = count == buf.length ? buf : Arrays.copyOf(buf, count);
+            try {
+                chunks.put(full);
+            } catch (InterruptedException ex) {
+                throw new InterruptedIOException("Cancelled.");
+            }
+            buf = new byte[CHUNK_SIZE];
+            count = 0;
+        }
+    }
+}
@@ -0,0 +1,35 @@
+package net.covers1624.gcp;
+
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Exponential backoff with jitter.
+ * <p>
+ * Each delay is between half and all of {@code initial * 2^attempt}, capped at {@code max}.
+ * The randomness spreads out clients which started at the same time.
+ * <p>
+ * Created by covers1624 on 18/10/26.
+ */
+class Backoff {
+
+    private final long initialMillis;
+    private final long maxMillis;
+
+    public Backoff(long initialMillis, long maxMillis) {
+        this.initialMillis = initialMillis;
+        this.maxMillis = maxMillis;
+    }
+
+    /**
+     * @param attempt The zero-based attempt number.
+     * @return The delay in milliseconds before the next attempt.
+     */
+    public long delay(int attempt) {
+        long delay = initialMillis << Math.min(attempt, 30);
+        if (delay <= 0 || delay > maxMillis) {
+            delay = maxMillis;
+        }
+        long half = delay / 2;
+        return half + ThreadLocalRandom.current().nextLong(delay - half + 1);
+    }
+}
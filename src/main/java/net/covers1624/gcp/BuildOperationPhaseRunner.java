@@ -0,0 +1,110 @@
+package net.covers1624.gcp;
+
+import org.gradle.api.logging.Logger;
+import org.gradle.api.logging.Logging;
+import org.gradle.api.model.ObjectFactory;
+import org.gradle.internal.logging.progress.ProgressLoggerFactory;
+import org.gradle.internal.operations.BuildOperationContext;
+import org.gradle.internal.operations.BuildOperationDescriptor;
+import org.gradle.internal.operations.BuildOperationRunner;
+import org.gradle.internal.operations.CallableBuildOperation;
+import org.jetbrains.annotations.Nullable;
+
+import javax.inject.Inject;
+import java.io.IOException;
+
+/**
+ * Runs each phase of a publish as its own Gradle build operation, so they
+ * show up in build scans and to build operation listeners.
+ * <p>
+ * This is the only place Gradle's internal services are used. They are looked up on demand,
+ * so when a Gradle version does not provide them, phases simply run directly, and upload
+ * progress is not shown.
+ * <p>
+ * Created by covers1624 on 18/10/26.
+ */
+class BuildOperationPhaseRunner implements PublishMetrics.PhaseRunner {
+
+    private static final Logger LOGGER = Logging.getLogger(BuildOperationPhaseRunner.class);
+
+    private final BuildOperationRunner runner;
+    private final String taskPath;
+
+    private BuildOperationPhaseRunner(BuildOperationRunner runner, String taskPath) {
+        this.runner = runner;
+        this.taskPath = taskPath;
+    }
+
+    /**
+     * Create a phase runner for the given task.
+     *
+     * @param objects  The object factory of the work action.
+     * @param taskPath The path of the task, used in the build operation names.
+     * @return The runner, or {@link PublishMetrics.PhaseRunner#DIRECT} if build operations are not available.
+     */
+    public static PublishMetrics.PhaseRunner create(ObjectFactory objects, String taskPath) {
+        try {
+            return new BuildOperationPhaseRunner(objects.newInstance(Services.class).getBuildOperationRunner(), taskPath);
+        } catch (RuntimeException | LinkageError ex) {
+            LOGGER.info("Build operations are not available, publish phases will not be reported.", ex);
+            return PublishMetrics.PhaseRunner.DIRECT;
+        }
+    }
+
+    /**
+     * Create a logger showing upload progress in Gradle's console.
+     *
+     * @param objects     The object factory of the work action.
+     * @param description The description of the upload.
+     * @return The logger, or {@code null} if progress logging is not available.
+     */
+    public static @Nullable UploadProgressLogger progressLogger(ObjectFactory objects, String description) {
+        try {
+            return new UploadProgressLogger(objects.newInstance(Services.class).getProgressLoggerFactory(), description);
+        } catch (RuntimeException | LinkageError ex) {
+            LOGGER.info("Progress logging is not available, upload progress will not be shown.", ex);
+            return null;
+        }
+    }
+
+    @Override
+    public <T> T run(PublishMetrics metrics, String name, PublishMetrics.Phase<T> action) throws IOException {
+        IOException[] failure = { null };
+        T result = runner.call(new CallableBuildOperation<T>() {
+            @Override
+            public T call(BuildOperationContext context) {
+                long start = System.nanoTime();
+                try {
+                    return action.run();
+                } catch (IOException ex) {
+                    // Rethrown outside the operation, as checked exceptions would be wrapped.
+                    failure[0] = ex;
+                    context.failed(ex);
+                    return null;
+                } finally {
+                    context.setResult(new PublishMetrics.PhaseResult(name, System.nanoTime() - start, metrics));
+                }
+            }
+
+            @Override
+            public BuildOperationDescriptor.Builder description() {
+                return BuildOperationDescriptor.displayName("Central publish " + name + " for " + taskPath)
+                        .progressDisplayName(name);
+            }
+        });
+        if (failure[0] != null) throw failure[0];
+        return result;
+    }
+
+    /**
+     * Gradle's internal services, injected when first requested.
+     */
+    public abstract static class Services {
+
+        @Inject
+        public abstract BuildOperationRunner getBuildOperationRunner();
+
+        @Inject
+        public abstract ProgressLoggerFactory getProgressLoggerFactory();
+    }
+}
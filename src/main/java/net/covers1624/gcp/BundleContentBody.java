@@ -0,0 +1,56 @@
+package net.covers1624.gcp;
+
+import org.apache.http.entity.ContentType;
+import org.apache.http.entity.mime.MIME;
+import org.apache.http.entity.mime.content.AbstractContentBody;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.List;
+
+/**
+ * A multipart body which produces the bundle zip directly into the request stream.
+ * <p>
+ * The bundle never touches the disk. Compressed entries are deflated again as they are
+ * written, on a background thread, so compression overlaps with the transfer of the entry.
+ * As {@link BundleEntry} sizes are known up front, the exact content length is known
+ * before any data is written.
+ * <p>
+ * Created by covers1624 on 18/10/26.
+ */
+class BundleContentBody extends AbstractContentBody {
+
+    private final List<BundleEntry> entries;
+    private final String fileName;
+    private final @Nullable PublishMetrics metrics;
+    private final long length;
+
+    public BundleContentBody(List<BundleEntry> entries, String fileName, @Nullable PublishMetrics metrics) {
+        super(ContentType.APPLICATION_OCTET_STREAM);
+        this.entries = entries;
+        this.fileName = fileName;
+        this.metrics = metrics;
+        length = BundleWriter.computeLength(entries);
+    }
+
+    @Override
+    public String getFilename() {
+        return fileName;
+    }
+
+    @Override
+    public void writeTo(OutputStream out) throws IOException {
+        BundleWriter.writeTo(entries, out, metrics);
+    }
+
+    @Override
+    public String getTransferEncoding() {
+        return MIME.ENC_BINARY;
+    }
+
+    @Override
+    public long getContentLength() {
+        return length;
+    }
+}
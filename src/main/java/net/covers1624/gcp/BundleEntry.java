@@ -0,0 +1,188 @@
+package net.covers1624.gcp;
+
+import org.jetbrains.annotations.Nullable;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.MessageDigest;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.Inflater;
+import java.util.zip.InflaterInputStream;
+import java.util.zip.ZipEntry;
+
+/**
+ * A single, fully prepared, entry in a bundle.
+ * <p>
+ * All sizes and the CRC are known ahead of time, and the data is already
+ * in its final (possibly compressed) form. This allows entries to be prepared
+ * concurrently, and later written by {@link BundleWriter} in any order.
+ * <p>
+ * Created by covers1624 on 18/10/26.
+ */
+class BundleEntry {
+
+    public final String name;
+    public final int method;
+    public final long crc;
+    public final long size;
+    public final long compressedSize;
+    /**
+     * The hex encoded SHA-256 of the uncompressed data.
+     */
+    public final String sha256;
+    /**
+     * The file containing this entry's raw data, exactly as it should be written to the zip.
+     * {@code null} if the data is held in memory.
+     */
+    public final @Nullable Path file;
+    private final StreamSupplier data;
+
+    public BundleEntry(String name, int method, long crc, long size, long compressedSize, String sha256, StreamSupplier data) {
+        this(name, method, crc, size, compressedSize, sha256, null, data);
+    }
+
+    private BundleEntry(String name, int method, long crc, long size, long compressedSize, String sha256, @Nullable Path file, StreamSupplier data) {
+        this.name = name;
+        this.method = method;
+        this.crc = crc;
+        this.size = size;
+        this.compressedSize = compressedSize;
+        this.sha256 = sha256;
+        this.file = file;
+        this.data = data;
+    }
+
+    /**
+     * Open the raw data for this entry, as it should be written to the zip.
+     * <p>
+     * For {@link ZipEntry#DEFLATED} entries, this is the raw deflate stream.
+     *
+     * @return The stream.
+     */
+    public InputStream open() throws IOException {
+        return data.open();
+    }
+
+    /**
+     * Open the uncompressed data for this entry.
+     *
+     * @return The stream.
+     */
+    public InputStream openUncompressed() throws IOException {
+        if (method == ZipEntry.STORED) return open();
+
+        Inflater inflater = new Inflater(true);
+        return new InflaterInputStream(open(), inflater, Utils.BUFFER_SIZE) {
+            @Override
+            public void close() throws IOException {
+                try {
+                    super.close();
+                } finally {
+                    inflater.end();
+                }
+            }
+        };
+    }
+
+    /**
+     * Create a stored entry for the given in-memory data.
+     *
+     * @param name  The name of the entry.
+     * @param bytes The bytes.
+     * @return The entry.
+     */
+    public static BundleEntry stored(String name, byte[] bytes) {
+        CRC32 crc = new CRC32();
+        crc.update(bytes, 0, bytes.length);
+        return new BundleEntry(name, ZipEntry.STORED, crc.getValue(), bytes.length, bytes.length, sha256(bytes), () -> new ByteArrayInputStream(bytes));
+    }
+
+    /**
+     * Create a stored entry for the given file.
+     *
+     * @param name   The name of the entry.
+     * @param crc    The CRC32 of the file.
+     * @param size   The size of the file.
+     * @param sha256 The SHA-256 of the file.
+     * @param file   The file.
+     * @return The entry.
+     */
+    public static BundleEntry stored(String name, long crc, long size, String sha256, Path file) {
+        return new BundleEntry(name, ZipEntry.STORED, crc, size, size, sha256, file, () -> Files.newInputStream(file));
+    }
+
+    /**
+     * Create a deflated entry for the given in-memory data.
+     *
+     * @param name  The name of the entry.
+     * @param bytes The bytes.
+     * @param level The {@link Deflater} level.
+     * @return The entry.
+     */
+    public static BundleEntry deflated(String name, byte[] bytes, int level) {
+        CRC32 crc = new CRC32();
+        crc.update(bytes, 0, bytes.length);
+
+        Deflater deflater = new Deflater(level, true);
+        ByteArrayOutputStream bos = new ByteArrayOutputStream();
+        try (DeflaterOutputStream dos = new DeflaterOutputStream(bos, deflater)) {
+            dos.write(bytes);
+        } catch (IOException ex) {
+            throw new RuntimeException("ByteArrayOutputStream threw an IOException?", ex);
+        } finally {
+            deflater.end();
+        }
+        byte[] compressed = bos.toByteArray();
+        return new BundleEntry(name, ZipEntry.DEFLATED, crc.getValue(), bytes.length, compressed.length, sha256(bytes), () -> new ByteArrayInputStream(compressed));
+    }
+
+    /**
+     * Create a deflated entry, whose raw deflate data has already been written to the given file.
+     *
+     * @param name   The name of the entry.
+     * @param crc    The CRC32 of the uncompressed data.
+     * @param size   The size of the uncompressed data.
+     * @param sha256 The SHA-256 of the uncompressed data.
+     * @param file   The file containing the raw deflate data.
+     * @return The entry.
+     */
+    public static BundleEntry deflated(String name, long crc, long size, String sha256, Path file) throws IOException {
+        return new BundleEntry(name, ZipEntry.DEFLATED, crc, size, Files.size(file), sha256, file, () -> Files.newInputStream(file));
+    }
+
+    /**
+     * Create a deflated entry, whose raw deflate data is produced from the given file each time it is opened.
+     * <p>
+     * The file is compressed on a background thread whilst the entry is read, see {@link BackgroundDeflateStream}.
+     * Deflate is deterministic, so the compressed size is known from a previous pass at the same level.
+     *
+     * @param name           The name of the entry.
+     * @param crc            The CRC32 of the file.
+     * @param size           The size of the file.
+     * @param compressedSize The size of the raw deflate data.
+     * @param sha256         The SHA-256 of the file.
+     * @param source         The file.
+     * @param level          The {@link Deflater} level.
+     * @return The entry.
+     */
+    public static BundleEntry deflatedOnDemand(String name, long crc, long size, long compressedSize, String sha256, Path source, int level) {
+        return new BundleEntry(name, ZipEntry.DEFLATED, crc, size, compressedSize, sha256, () -> new BackgroundDeflateStream(source, level, crc));
+    }
+
+    private static String sha256(byte[] bytes) {
+        MessageDigest digest = Utils.getDigest("SHA-256");
+        digest.update(bytes);
+        return Utils.finishHash(digest);
+    }
+
+    public interface StreamSupplier {
+
+        InputStream open() throws IOException;
+    }
+}
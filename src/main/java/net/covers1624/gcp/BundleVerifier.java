@@ -0,0 +1,225 @@
+package net.covers1624.gcp;
+
+import org.gradle.api.InvalidUserDataException;
+import org.gradle.api.logging.Logger;
+import org.gradle.api.logging.Logging;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.zip.CRC32;
+
+/**
+ * Checks a prepared bundle against the requirements Central enforces on upload,
+ * so that a bundle which would be rejected is never uploaded.
+ * <p>
+ * Created by covers1624 on 18/10/26.
+ */
+class BundleVerifier {
+
+    private static final Logger LOGGER = Logging.getLogger(BundleVerifier.class);
+
+    /**
+     * Files Central requires alongside every file in the bundle.
+     * Signatures themselves do not need checksums.
+     */
+    private static final List<String> REQUIRED_CHECKSUMS = Arrays.asList("md5", "sha1");
+    private static final String SIGNATURE = "asc";
+
+    private static final Map<String, String> CHECKSUM_ALGORITHMS = new LinkedHashMap<>();
+
+    static {
+        CHECKSUM_ALGORITHMS.put("md5", "MD5");
+        CHECKSUM_ALGORITHMS.put("sha1", "SHA-1");
+        CHECKSUM_ALGORITHMS.put("sha256", "SHA-256");
+        CHECKSUM_ALGORITHMS.put("sha512", "SHA-512");
+    }
+
+    /**
+     * Verify the bundle's layout. Every file must be signed and have checksums, and every
+     * jar publication must include sources and javadoc jars.
+     * <p>
+     * All problems are reported at once.
+     *
+     * @param entries The bundle entries.
+     * @throws InvalidUserDataException If the bundle would be rejected by Central.
+     */
+    public static void verifyLayout(List<BundleEntry> entries) {
+        List<String> names = new ArrayList<>();
+        for (BundleEntry entry : entries) {
+            names.add(entry.name);
+        }
+        verifyLayout(names);
+    }
+
+    /**
+     * Verify the layout of a bundle containing the given files.
+     *
+     * @param entries The names of all files in the bundle.
+     * @throws InvalidUserDataException If the bundle would be rejected by Central.
+     * @see #verifyLayout(List)
+     */
+    public static void verifyLayout(Collection<String> entries) {
+        Set<String> names = new HashSet<>(entries);
+
+        List<String> problems = new ArrayList<>();
+        Map<String, Set<String>> jarClassifiers = new TreeMap<>();
+        for (String name : entries) {
+            if (isChecksum(name)) continue;
+
+            boolean signature = name.endsWith("." + SIGNATURE);
+            if (!signature && !names.contains(name + "." + SIGNATURE)) {
+                problems.add("Missing signature " + name + "." + SIGNATURE);
+            }
+            if (!signature) {
+                for (String checksum : REQUIRED_CHECKSUMS) {
+                    if (!names.contains(name + "." + checksum)) {
+                        problems.add("Missing checksum " + name + "." + checksum);
+                    }
+                }
+            }
+
+            // group/path/artifact/version/artifact-version[-classifier].ext
+            String[] parts = name.split("/");
+            if (signature || parts.length < 3) continue;
+            String dir = name.substring(0, name.lastIndexOf('/'));
+            String prefix = parts[parts.length - 3] + "-" + parts[parts.length - 2];
+            String fileName = parts[parts.length - 1];
+            if (!fileName.startsWith(prefix) || !fileName.endsWith(".jar")) continue;
+
+            String rest = fileName.substring(prefix.length(), fileName.length() - ".jar".length());
+            Set<String> classifiers = jarClassifiers.computeIfAbsent(dir, e -> new HashSet<>());
+            if (rest.isEmpty()) {
+                classifiers.add("");
+            } else if (rest.startsWith("-")) {
+                classifiers.add(rest.substring(1));
+            }
+        }
+        for (Map.Entry<String, Set<String>> entry : jarClassifiers.entrySet()) {
+            // Only publications with a main jar require sources and javadoc.
+            if (!entry.getValue().contains("")) continue;
+            for (String classifier : Arrays.asList("sources", "javadoc")) {
+                if (!entry.getValue().contains(classifier)) {
+                    problems.add("Missing " + classifier + " jar in " + entry.getKey());
+                }
+            }
+        }
+
+        if (!problems.isEmpty()) {
+            throw new InvalidUserDataException("Bundle does not meet Central's requirements:\n " + String.join("\n ", problems));
+        }
+    }
+
+    /**
+     * Re-read every entry in the bundle, checking its CRC, size and all checksum
+     * entries against its content.
+     * <p>
+     * Entries are verified concurrently, the first mismatch aborts verification.
+     *
+     * @param entries     The bundle entries.
+     * @param parallelism The maximum number of entries to verify at once.
+     * @throws IOException If an entry does not match its checksums.
+     */
+    public static void verifyChecksums(List<BundleEntry> entries, int parallelism) throws IOException {
+        Map<String, BundleEntry> byName = new HashMap<>();
+        for (BundleEntry entry : entries) {
+            byName.put(entry.name, entry);
+        }
+
+        List<BundleEntry> toVerify = new ArrayList<>();
+        for (BundleEntry entry : entries) {
+            if (!isChecksum(entry.name)) {
+                toVerify.add(entry);
+            }
+        }
+
+        ForkJoinPool pool = new ForkJoinPool(Math.max(1, Math.min(parallelism, toVerify.size())));
+        try {
+            // Take results in completion order, so the first failure aborts everything else.
+            CompletionService<Void> completion = new ExecutorCompletionService<>(pool);
+            for (BundleEntry entry : toVerify) {
+                completion.submit(() -> {
+                    verifyEntry(entry, byName);
+                    return null;
+                });
+            }
+            for (int i = 0; i < toVerify.size(); i++) {
+                Utils.join(take(completion));
+            }
+        } finally {
+            pool.shutdownNow();
+        }
+        LOGGER.info("Verified checksums of {} files.", toVerify.size());
+    }
+
+    private static <T> Future<T> take(CompletionService<T> completion) throws IOException {
+        try {
+            return completion.take();
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted whilst verifying checksums.");
+        }
+    }
+
+    private static void verifyEntry(BundleEntry entry, Map<String, BundleEntry> byName) throws IOException {
+        // The checksum files in the bundle, keyed by algorithm.
+        Map<String, BundleEntry> checksums = new LinkedHashMap<>();
+        for (Map.Entry<String, String> alg : CHECKSUM_ALGORITHMS.entrySet()) {
+            BundleEntry checksum = byName.get(entry.name + "." + alg.getKey());
+            if (checksum != null) {
+                checksums.put(alg.getValue(), checksum);
+            }
+        }
+        Set<String> algorithms = new LinkedHashSet<>(checksums.keySet());
+        algorithms.add("SHA-256");
+
+        MultiHasher hasher = new MultiHasher(algorithms);
+        CRC32 crc = new CRC32();
+        long size = 0;
+        try (InputStream is = entry.openUncompressed()) {
+            byte[] buf = new byte[Utils.BUFFER_SIZE];
+            int len;
+            while ((len = is.read(buf)) != -1) {
+                hasher.update(buf, 0, len);
+                crc.update(buf, 0, len);
+                size += len;
+            }
+        }
+        if (size != entry.size) throw new IOException("Size mismatch for " + entry.name + ". Expected " + entry.size + ", got " + size);
+        if (crc.getValue() != entry.crc) throw new IOException("CRC mismatch for " + entry.name + ". Was the file modified during the build?");
+
+        Map<String, String> hashes = hasher.finish();
+        if (!entry.sha256.equalsIgnoreCase(hashes.get("SHA-256"))) {
+            throw new IOException("SHA-256 mismatch for " + entry.name + ". Expected " + entry.sha256 + ", got " + hashes.get("SHA-256"));
+        }
+        // Checked separately from the entry's own hash, a checksum file may be wrong even if the content is not.
+        for (Map.Entry<String, BundleEntry> checksum : checksums.entrySet()) {
+            String want = readString(checksum.getValue());
+            String got = hashes.get(checksum.getKey());
+            if (!want.equalsIgnoreCase(got)) {
+                throw new IOException(checksum.getKey() + " mismatch for " + entry.name + ". " + checksum.getValue().name + " contains " + want + ", got " + got);
+            }
+        }
+    }
+
+    private static String readString(BundleEntry entry) throws IOException {
+        ByteArrayOutputStream bos = new ByteArrayOutputStream();
+        try (InputStream is = entry.openUncompressed()) {
+            byte[] buf = new byte[256];
+            int len;
+            while ((len = is.read(buf)) != -1) {
+                bos.write(buf, 0, len);
+            }
+        }
+        return new String(bos.toByteArray(), StandardCharsets.UTF_8).trim();
+    }
+
+    private static boolean isChecksum(String name) {
+        int dot = name.lastIndexOf('.');
+        return dot != -1 && CHECKSUM_ALGORITHMS.containsKey(name.substring(dot + 1));
+    }
+}
@@ -0,0 +1,375 @@
+package net.covers1624.gcp;
+
+import org.jetbrains.annotations.Nullable;
+
+import java.io.*;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * A minimal zip writer for pre-prepared {@link BundleEntry}s.
+ * <p>
+ * Unlike {@link java.util.zip.ZipOutputStream}, this writer does not compress
+ * anything itself. Entries arrive with their CRC, sizes and final data already
+ * computed, which allows them to be prepared on other threads. As all sizes are
+ * known up front, no data descriptors are required.
+ * <p>
+ * Zip64 extensions are written when an entry, or the archive itself, grows beyond
+ * the limits of the standard format.
+ * <p>
+ * When writing to a file, entries backed by a file are moved with {@link FileChannel#transferTo},
+ * so their data never passes through the Java heap.
+ * <p>
+ * Output is reproducible, every entry has the same fixed timestamp and permissions,
+ * so identical entries always produce an identical zip.
+ * <p>
+ * Created by covers1624 on 18/10/26.
+ */
+class BundleWriter implements Closeable {
+
+    private static final int LOCAL_HEADER_SIG = 0x04034b50;
+    private static final int CENTRAL_HEADER_SIG = 0x02014b50;
+    private static final int END_SIG = 0x06054b50;
+    private static final int ZIP64_END_SIG = 0x06064b50;
+    private static final int ZIP64_LOCATOR_SIG = 0x07064b50;
+
+    private static final int ZIP64_EXTRA_ID = 0x0001;
+    private static final long ZIP64_MAGIC = 0xFFFFFFFFL;
+    private static final int ZIP64_MAGIC_COUNT = 0xFFFF;
+
+    private static final int VERSION_DEFAULT = 20;
+    private static final int VERSION_ZIP64 = 45;
+    private static final int FLAG_UTF8 = 0x0800;
+
+    // 1980-01-01 00:00:00, the earliest time a zip can represent.
+    private static final int DOS_TIME = (1 << 21) | (1 << 16);
+    // Made by Unix, so the external attributes below are read as permissions.
+    private static final int MADE_BY_UNIX = 3 << 8;
+    // Regular file, rw-r--r--.
+    private static final int EXTERNAL_ATTRIBUTES = 0100644 << 16;
+
+    private final CountingOutputStream os;
+    private final LittleEndianOutput out;
+    private final List<Written> written = new ArrayList<>();
+    private final boolean skipData;
+    private final @Nullable FileChannel channel;
+    private boolean finished;
+
+    public BundleWriter(OutputStream os) {
+        this(new BufferedOutputStream(os, Utils.BUFFER_SIZE), false, null);
+    }
+
+    private BundleWriter(OutputStream os, boolean skipData, @Nullable FileChannel channel) {
+        this.os = new CountingOutputStream(os);
+        this.skipData = skipData;
+        this.channel = channel;
+        out = new LittleEndianOutput(this.os);
+    }
+
+    /**
+     * Write the given entries as a complete zip to the given stream.
+     * <p>
+     * The stream is flushed, but not closed.
+     *
+     * @param entries The entries.
+     * @param os      The stream.
+     */
+    public static void writeTo(List<BundleEntry> entries, OutputStream os) throws IOException {
+        writeTo(entries, os, null);
+    }
+
+    /**
+     * Write the given entries as a complete zip to the given stream,
+     * recording the time taken to write each entry.
+     * <p>
+     * The stream is flushed, but not closed.
+     *
+     * @param entries The entries.
+     * @param os      The stream.
+     * @param metrics The metrics to record to, if any.
+     */
+    public static void writeTo(List<BundleEntry> entries, OutputStream os, @Nullable PublishMetrics metrics) throws IOException {
+        writeAll(new BundleWriter(os), entries, metrics);
+    }
+
+    /**
+     * Write the given entries as a complete zip to the given file, replacing it if it exists,
+     * recording the time taken to write each entry.
+     * <p>
+     * File backed entries are transferred directly between channels.
+     *
+     * @param entries The entries.
+     * @param file    The file.
+     * @param metrics The metrics to record to, if any.
+     */
+    public static void writeTo(List<BundleEntry> entries, Path file, @Nullable PublishMetrics metrics) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            OutputStream os = new BufferedOutputStream(Channels.newOutputStream(channel), Utils.BUFFER_SIZE);
+            writeAll(new BundleWriter(os, false, channel), entries, metrics);
+        }
+    }
+
+    private static void writeAll(BundleWriter writer, List<BundleEntry> entries, @Nullable PublishMetrics metrics) throws IOException {
+        for (BundleEntry entry : entries) {
+            long start = System.nanoTime();
+            writer.write(entry);
+            if (metrics != null) {
+                metrics.recordWritten(entry, System.nanoTime() - start);
+            }
+        }
+        writer.finish();
+    }
+
+    /**
+     * Compute the exact length of the zip that would be produced for the given entries,
+     * without reading any entry data.
+     *
+     * @param entries The entries.
+     * @return The length in bytes.
+     */
+    public static long computeLength(List<BundleEntry> entries) {
+        try {
+            BundleWriter writer = new BundleWriter(Utils.NULL_OUTPUT, true, null);
+            for (BundleEntry entry : entries) {
+                writer.write(entry);
+            }
+            writer.finish();
+            return writer.os.getCount();
+        } catch (IOException ex) {
+            throw new RuntimeException("Null stream threw an IOException?", ex);
+        }
+    }
+
+    /**
+     * Write the given entry to the zip.
+     *
+     * @param entry The entry.
+     */
+    public void write(BundleEntry entry) throws IOException {
+        if (finished) throw new IllegalStateException("Already finished.");
+
+        byte[] name = entry.name.getBytes(StandardCharsets.UTF_8);
+        boolean zip64 = entry.size >= ZIP64_MAGIC || entry.compressedSize >= ZIP64_MAGIC;
+        long offset = os.getCount();
+
+        out.writeInt(LOCAL_HEADER_SIG);
+        out.writeShort(zip64 ? VERSION_ZIP64 : VERSION_DEFAULT);
+        out.writeShort(FLAG_UTF8);
+        out.writeShort(entry.method);
+        out.writeInt(DOS_TIME);
+        out.writeInt((int) entry.crc);
+        out.writeInt((int) (zip64 ? ZIP64_MAGIC : entry.compressedSize));
+        out.writeInt((int) (zip64 ? ZIP64_MAGIC : entry.size));
+        out.writeShort(name.length);
+        out.writeShort(zip64 ? 20 : 0);
+        out.write(name);
+        if (zip64) {
+            out.writeShort(ZIP64_EXTRA_ID);
+            out.writeShort(16);
+            out.writeLong(entry.size);
+            out.writeLong(entry.compressedSize);
+        }
+
+        if (skipData) {
+            os.count += entry.compressedSize;
+            written.add(new Written(entry, name, offset));
+            return;
+        }
+
+        long dataStart = os.getCount();
+        if (channel != null && entry.file != null) {
+            os.count += transfer(entry.file, channel);
+        } else {
+            try (InputStream is = entry.open()) {
+                byte[] buf = new byte[Utils.BUFFER_SIZE];
+                int len;
+                while ((len = is.read(buf)) != -1) {
+                    os.write(buf, 0, len);
+                }
+            }
+        }
+        long dataLen = os.getCount() - dataStart;
+        if (dataLen != entry.compressedSize) {
+            throw new IOException("Entry " + entry.name + " expected " + entry.compressedSize + " bytes of data, got " + dataLen);
+        }
+        written.add(new Written(entry, name, offset));
+    }
+
+    // Appends the file to the channel, bypassing our buffers. Returns the number of bytes transferred.
+    private long transfer(Path file, FileChannel target) throws IOException {
+        // Headers must hit the channel first.
+        os.flush();
+        try (FileChannel source = FileChannel.open(file, StandardOpenOption.READ)) {
+            long size = source.size();
+            long pos = 0;
+            while (pos < size) {
+                long n = source.transferTo(pos, size - pos, target);
+                if (n <= 0) break;
+                pos += n;
+            }
+            return pos;
+        }
+    }
+
+    /**
+     * Write the central directory and end records.
+     * <p>
+     * This does not close the underlying stream.
+     */
+    public void finish() throws IOException {
+        if (finished) return;
+        finished = true;
+
+        long cdStart = os.getCount();
+        for (Written w : written) {
+            writeCentralHeader(w);
+        }
+        long cdEnd = os.getCount();
+        long cdSize = cdEnd - cdStart;
+        int count = written.size();
+
+        boolean zip64 = count >= ZIP64_MAGIC_COUNT || cdSize >= ZIP64_MAGIC || cdStart >= ZIP64_MAGIC;
+        if (zip64) {
+            out.writeInt(ZIP64_END_SIG);
+            out.writeLong(44);
+            out.writeShort(VERSION_ZIP64);
+            out.writeShort(VERSION_ZIP64);
+            out.writeInt(0);
+            out.writeInt(0);
+            out.writeLong(count);
+            out.writeLong(count);
+            out.writeLong(cdSize);
+            out.writeLong(cdStart);
+
+            out.writeInt(ZIP64_LOCATOR_SIG);
+            out.writeInt(0);
+            out.writeLong(cdEnd);
+            out.writeInt(1);
+        }
+
+        out.writeInt(END_SIG);
+        out.writeShort(0);
+        out.writeShort(0);
+        out.writeShort(zip64 ? ZIP64_MAGIC_COUNT : count);
+        out.writeShort(zip64 ? ZIP64_MAGIC_COUNT : count);
+        out.writeInt((int) (zip64 ? ZIP64_MAGIC : cdSize));
+        out.writeInt((int) (zip64 ? ZIP64_MAGIC : cdStart));
+        out.writeShort(0);
+        os.flush();
+    }
+
+    private void writeCentralHeader(Written w) throws IOException {
+        BundleEntry entry = w.entry;
+        boolean sizeZip64 = entry.size >= ZIP64_MAGIC;
+        boolean compressedZip64 = entry.compressedSize >= ZIP64_MAGIC;
+        boolean offsetZip64 = w.offset >= ZIP64_MAGIC;
+        int extraLen = (sizeZip64 ? 8 : 0) + (compressedZip64 ? 8 : 0) + (offsetZip64 ? 8 : 0);
+        boolean zip64 = extraLen != 0;
+
+        out.writeInt(CENTRAL_HEADER_SIG);
+        out.writeShort(MADE_BY_UNIX | (zip64 ? VERSION_ZIP64 : VERSION_DEFAULT));
+        out.writeShort(zip64 ? VERSION_ZIP64 : VERSION_DEFAULT);
+        out.writeShort(FLAG_UTF8);
+        out.writeShort(entry.method);
+        out.writeInt(DOS_TIME);
+        out.writeInt((int) entry.crc);
+        out.writeInt((int) (compressedZip64 ? ZIP64_MAGIC : entry.compressedSize));
+        out.writeInt((int) (sizeZip64 ? ZIP64_MAGIC : entry.size));
+        out.writeShort(w.name.length);
+        out.writeShort(zip64 ? extraLen + 4 : 0);
+        out.writeShort(0); // Comment length.
+        out.writeShort(0); // Disk number.
+        out.writeShort(0); // Internal attributes.
+        out.writeInt(EXTERNAL_ATTRIBUTES);
+        out.writeInt((int) (offsetZip64 ? ZIP64_MAGIC : w.offset));
+        out.write(w.name);
+        if (zip64) {
+            out.writeShort(ZIP64_EXTRA_ID);
+            out.writeShort(extraLen);
+            if (sizeZip64) out.writeLong(entry.size);
+            if (compressedZip64) out.writeLong(entry.compressedSize);
+            if (offsetZip64) out.writeLong(w.offset);
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        try {
+            finish();
+        } finally {
+            os.close();
+        }
+    }
+
+    private static final class Written {
+
+        public final BundleEntry entry;
+        public final byte[] name;
+        public final long offset;
+
+        private Written(BundleEntry entry, byte[] name, long offset) {
+            this.entry = entry;
+            this.name = name;
+            this.offset = offset;
+        }
+    }
+
+    private static final class CountingOutputStream extends FilterOutputStream {
+
+        private long count;
+
+        public CountingOutputStream(OutputStream os) {
+            super(os);
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            out.write(b);
+            count++;
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            out.write(b, off, len);
+            count += len;
+        }
+
+        public long getCount() {
+            return count;
+        }
+    }
+
+    // Zip is little endian, DataOutputStream is big endian.
+    private static final class LittleEndianOutput {
+
+        private final OutputStream os;
+
+        public LittleEndianOutput(OutputStream os) {
+            this.os = os;
+        }
+
+        public void write(byte[] b) throws IOException {
+            os.write(b);
+        }
+
+        public void writeShort(int v) throws IOException {
+            os.write(v & 0xFF);
+            os.write((v >>> 8) & 0xFF);
+        }
+
+        public void writeInt(int v) throws IOException {
+            writeShort(v & 0xFFFF);
+            writeShort((v >>> 16) & 0xFFFF);
+        }
+
+        public void writeLong(long v) throws IOException {
+            writeInt((int) v);
+            writeInt((int) (v >>> 32));
+        }
+    }
+}
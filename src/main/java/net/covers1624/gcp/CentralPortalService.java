@@ -0,0 +1,108 @@
+package net.covers1624.gcp;
+
+import org.apache.http.client.config.RequestConfig;
+import org.apache.http.impl.client.CloseableHttpClient;
+import org.apache.http.impl.client.DefaultConnectionKeepAliveStrategy;
+import org.apache.http.impl.client.HttpClients;
+import org.apache.http.impl.conn.PoolingHttpClientConnectionManager;
+import org.gradle.api.logging.Logger;
+import org.gradle.api.logging.Logging;
+import org.gradle.api.provider.Property;
+import org.gradle.api.services.BuildService;
+import org.gradle.api.services.BuildServiceParameters;
+import org.jetbrains.annotations.ApiStatus;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.time.Duration;
+
+/**
+ * Holds a single pooled, keep-alive, http client for all interactions with the
+ * Publisher Portal during a build.
+ * <p>
+ * The number of uploads at once is limited by {@link ReleaseTrainService}, not this service's {@code maxParallelUsages},
+ * so tasks awaiting their deployments do not hold up other uploads.
+ * <p>
+ * If {@link Parameters#getLocalPortal()} is set, a {@link LocalPortal} is started for the
+ * lifetime of this service, and used instead of the configured endpoint.
+ * <p>
+ * Created by covers1624 on 18/10/26.
+ */
+@ApiStatus.Internal
+public abstract class CentralPortalService implements BuildService<CentralPortalService.Parameters>, AutoCloseable {
+
+    public static final String NAME = "centralPublisherPortal";
+
+    private static final Logger LOGGER = Logging.getLogger(CentralPortalService.class);
+
+    private static final int MAX_CONNECTIONS = 16;
+    private static final Backoff UPLOAD_BACKOFF = new Backoff(1000, 60000);
+
+    private final CloseableHttpClient client;
+    private final @Nullable LocalPortal localPortal;
+    private final SonatypeApi api;
+
+    public CentralPortalService() {
+        PoolingHttpClientConnectionManager connectionManager = new PoolingHttpClientConnectionManager();
+        connectionManager.setMaxTotal(MAX_CONNECTIONS);
+        connectionManager.setDefaultMaxPerRoute(MAX_CONNECTIONS);
+
+        int connectTimeout = (int) getParameters().getConnectTimeout().get().toMillis();
+        int socketTimeout = (int) getParameters().getSocketTimeout().get().toMillis();
+        client = HttpClients.custom()
+                .setConnectionManager(connectionManager)
+                .setKeepAliveStrategy(DefaultConnectionKeepAliveStrategy.INSTANCE)
+                .setDefaultRequestConfig(RequestConfig.custom()
+                        .setConnectTimeout(connectTimeout)
+                        .setConnectionRequestTimeout(connectTimeout)
+                        .setSocketTimeout(socketTimeout)
+                        .build()
+                )
+                .build();
+
+        LocalPortalOptions localOptions = getParameters().getLocalPortal().getOrNull();
+        String endpoint = getParameters().getEndpoint().get();
+        if (localOptions != null) {
+            try {
+                localPortal = LocalPortal.start(localOptions);
+            } catch (IOException ex) {
+                throw new UncheckedIOException("Failed to start local portal.", ex);
+            }
+            endpoint = localPortal.getEndpoint();
+        } else {
+            localPortal = null;
+        }
+        api = new SonatypeApi(client, endpoint, getParameters().getMaxRetries().get(), UPLOAD_BACKOFF, getParameters().getMaxUploadBytesPerSecond().get());
+    }
+
+    SonatypeApi getApi() {
+        return api;
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (api.getRequestCount() != 0) {
+            LOGGER.info("Made {} requests to the central publishing portal, taking {}ms.", api.getRequestCount(), api.getRequestMillis());
+        }
+        client.close();
+        if (localPortal != null) {
+            localPortal.close();
+        }
+    }
+
+    public interface Parameters extends BuildServiceParameters {
+
+        Property<Duration> getConnectTimeout();
+
+        Property<Duration> getSocketTimeout();
+
+        Property<Integer> getMaxRetries();
+
+        Property<Long> getMaxUploadBytesPerSecond();
+
+        Property<String> getEndpoint();
+
+        Property<LocalPortalOptions> getLocalPortal();
+    }
+}
@@ -4,12 +4,21 @@ import org.gradle.api.Action;
 import org.gradle.api.InvalidUserDataException;
 import org.gradle.api.Project;
 import org.gradle.api.credentials.PasswordCredentials;
+import org.gradle.api.plugins.ExtraPropertiesExtension;
+import org.gradle.api.provider.Property;
 import org.gradle.api.provider.Provider;
+import org.gradle.api.provider.ProviderFactory;
+import org.gradle.api.publish.PublishingExtension;
 import org.gradle.api.publish.maven.MavenPublication;
 import org.gradle.api.publish.plugins.PublishingPlugin;
 import org.gradle.api.tasks.TaskProvider;
 import org.jetbrains.annotations.Nullable;
 
+import java.io.File;
+import java.time.Duration;
+import java.util.IdentityHashMap;
+import java.util.Map;
+
 import static org.codehaus.groovy.runtime.StringGroovyMethods.capitalize;
 
 /**
@@ -17,45 +26,367 @@ import static org.codehaus.groovy.runtime.StringGroovyMethods.capitalize;
  */
 public abstract class CentralPublishExtension {
 
+    public static final String AGGREGATE_TASK = "publishAggregateToCentralPublishingPortal";
+    public static final String AGGREGATE_BUNDLE_TASK = "createAggregateCentralBundle";
+    /**
+     * The default identity of the credentials read from Gradle properties, see {@link #credentials(String)}.
+     */
+    public static final String DEFAULT_CREDENTIALS = "centralPortal";
+
+    private static final String CLAIMED_PUBLICATIONS = "centralPublisherClaimedPublications";
+
     private final Project project;
-    private final PasswordCredentials credentials = new PasswordCredentialsImpl();
+    private final PasswordCredentials credentials = new SimplePasswordCredentials();
+    private final Property<PasswordCredentials> propertyCredentials;
+    private final CompressionPolicy compression = new CompressionPolicy();
 
     public String publishingType = "USER_MANAGED";
+    /**
+     * If set, publish tasks will wait for their deployment to reach the given state.
+     * Valid values are any {@link DeploymentState}, usually 'VALIDATED' or 'PUBLISHED'.
+     */
+    public @Nullable String waitForState = null;
+    /**
+     * The maximum time to wait for a deployment to reach {@link #waitForState}.
+     * <p>
+     * Also the maximum time uploads wait on an earlier deployment to be validated, when limited
+     * by {@link #maxOutstandingDeployments}.
+     */
+    public Duration waitTimeout = Duration.ofMinutes(30);
+    /**
+     * The base url of the publishing portal's api.
+     */
+    public String endpoint = SonatypeApi.DEFAULT_ENDPOINT;
+    /**
+     * The connect timeout for requests to the publishing portal.
+     */
+    public Duration connectTimeout = Duration.ofSeconds(30);
+    /**
+     * The socket read timeout for requests to the publishing portal.
+     */
+    public Duration socketTimeout = Duration.ofMinutes(5);
+    /**
+     * The maximum number of bundles which may be uploaded to the publishing portal at once,
+     * or {@code 0} for no limit. Waiting uploads are started smallest bundle first.
+     * <p>
+     * The endpoint, timeouts, retries, upload rate and these limits are shared by the whole build, they are taken
+     * from the first project to use the publishing portal.
+     */
+    public int maxConcurrentUploads = 0;
+    /**
+     * The maximum number of deployments which may be uploaded, but not yet validated by the
+     * publishing portal, or {@code 0} for no limit. Further uploads wait until a deployment
+     * is validated, or fails, failing if that takes longer than {@link #waitTimeout}.
+     */
+    public int maxOutstandingDeployments = 0;
+    /**
+     * The maximum number of times a publication is moved to the back of the upload queue,
+     * after its upload fails with all {@link #uploadRetries} exhausted. Only failures where the portal
+     * can not have accepted the bundle are retried this way.
+     */
+    public int maxPublicationRetries = 2;
+    /**
+     * The maximum number of times an upload is retried after a transient failure.
+     */
+    public int uploadRetries = 5;
+    /**
+     * The maximum rate, in bytes per second, of all uploads in the build combined,
+     * or {@code 0} for no limit. Useful on shared CI runners, to avoid saturating the link.
+     */
+    public long maxUploadBytesPerSecond = 0;
+    /**
+     * If artifacts should be hashed and compressed in parallel, bounded by Gradle's {@code --max-workers}.
+     */
+    public boolean parallelAssembly = true;
+    /**
+     * If the bundle should be assembled by the publish task and streamed directly into the upload,
+     * instead of being written to disk by a separate, cacheable, bundle task.
+     * <p>
+     * Avoids writing large bundles, or any compressed artifacts, to disk. This costs a second deflate pass
+     * over compressed artifacts, overlapped with the upload, and the bundle is never restored from the build cache.
+     */
+    public boolean streamBundle = false;
+    /**
+     * If every file in the bundle should be re-read and checked against its checksums
+     * before upload. The bundle's layout, signatures and checksum files are always verified.
+     */
+    public boolean verifyChecksums = false;
+    /**
+     * If artifact checksums should be cached in the Gradle user home, and reused
+     * across builds when the artifact has not changed.
+     */
+    public boolean checksumCache = true;
+
+    private final Property<String> signingKeyId;
+    private final Property<String> signingKey;
+    private final Property<String> signingPassword;
+    private @Nullable LocalPortalOptions localPortal;
 
     public CentralPublishExtension(Project project) {
         this.project = project;
+        signingKeyId = project.getObjects().property(String.class);
+        signingKey = project.getObjects().property(String.class);
+        signingPassword = project.getObjects().property(String.class);
+        propertyCredentials = project.getObjects().property(PasswordCredentials.class)
+                .convention(project.getProviders().credentials(PasswordCredentials.class, DEFAULT_CREDENTIALS));
     }
 
+    /**
+     * Credentials set here take priority over those from {@link #credentials(String)}.
+     * <p>
+     * Values set here are stored in the configuration cache, prefer {@link #credentials(String)}.
+     */
     public PasswordCredentials getCredentials() {
         return credentials;
     }
 
+    /**
+     * @see #getCredentials()
+     */
     public void credentials(Action<PasswordCredentials> creds) {
         creds.execute(credentials);
     }
 
+    /**
+     * Read the credentials from the {@code <identity>Username} and {@code <identity>Password} Gradle properties,
+     * via {@link ProviderFactory#credentials}. These are only read when needed, and never stored in the configuration cache.
+     * <p>
+     * By default, the {@code centralPortalUsername} and {@code centralPortalPassword} properties are used.
+     *
+     * @param identity The identity of the credentials.
+     */
+    public void credentials(String identity) {
+        propertyCredentials.set(project.getProviders().credentials(PasswordCredentials.class, identity));
+    }
+
+    public CompressionPolicy getCompression() {
+        return compression;
+    }
+
+    public void compression(Action<CompressionPolicy> action) {
+        action.execute(compression);
+    }
+
+    /**
+     * Sign all artifacts whilst creating the bundle, using the ASCII armored secret key and password
+     * from the {@code signingInMemoryKey} and {@code signingInMemoryKeyPassword} Gradle properties,
+     * and the optional key id from {@code signingInMemoryKeyId}. The same properties as the {@code signing} plugin.
+     * <p>
+     * These may also be set with {@code ORG_GRADLE_PROJECT_<name>} environment variables.
+     *
+     * @see #useInMemoryPgpKeys(Provider, Provider, Provider)
+     */
+    public void useInMemoryPgpKeys() {
+        ProviderFactory providers = project.getProviders();
+        useInMemoryPgpKeys(
+                providers.gradleProperty("signingInMemoryKeyId"),
+                providers.gradleProperty("signingInMemoryKey"),
+                providers.gradleProperty("signingInMemoryKeyPassword")
+        );
+    }
+
+    /**
+     * Sign all artifacts whilst creating the bundle, using the given ASCII armored secret key.
+     * <p>
+     * This replaces the {@code signing} plugin, artifacts are signed in the same pass that hashes
+     * and compresses them.
+     * <p>
+     * The key and password should come from {@link ProviderFactory}, such as {@link ProviderFactory#gradleProperty}
+     * or {@link ProviderFactory#environmentVariable}, which are read when the bundle is created,
+     * and never stored in the configuration cache.
+     *
+     * @param key      The ASCII armored secret key.
+     * @param password The password for the key.
+     */
+    public void useInMemoryPgpKeys(Provider<String> key, Provider<String> password) {
+        signingKeyId.unset();
+        signingKey.set(key);
+        signingPassword.set(password);
+    }
+
+    /**
+     * Sign all artifacts whilst creating the bundle, using the given key, or subkey,
+     * from the given ASCII armored secret key ring.
+     *
+     * @param keyId    The id of the key to sign with, in hex. If absent, the first key is used.
+     * @param key      The ASCII armored secret key.
+     * @param password The password for the key.
+     * @see #useInMemoryPgpKeys(Provider, Provider)
+     */
+    public void useInMemoryPgpKeys(Provider<String> keyId, Provider<String> key, Provider<String> password) {
+        signingKeyId.set(keyId);
+        signingKey.set(key);
+        signingPassword.set(password);
+    }
+
+    /**
+     * Publish to an embedded stand-in for the publishing portal, instead of {@link #endpoint}.
+     * <p>
+     * The stand-in accepts uploads, checks each bundle, and moves deployments through the usual states.
+     * Nothing is published to Maven Central. Useful for testing and benchmarking publishing without a network.
+     */
+    public void useLocalPortal() {
+        useLocalPortal(e -> { });
+    }
+
+    /**
+     * Publish to an embedded stand-in for the publishing portal, simulating latency and failures
+     * as configured.
+     *
+     * @param action Configures the stand-in.
+     * @see #useLocalPortal()
+     */
+    public void useLocalPortal(Action<LocalPortalOptions> action) {
+        LocalPortalOptions options = new LocalPortalOptions();
+        action.execute(options);
+        localPortal = options;
+    }
+
     public void forPublication(MavenPublication publication) {
         String taskName = "publish" + capitalize(publication.getName()) + "PublicationToCentralPublishingPortal";
         if (project.getTasks().getNames().contains(taskName)) {
             throw new InvalidUserDataException("Already configured this publication. " + publication.getName());
         }
+        claimPublication(publication, project.absoluteProjectPath(taskName));
+        TaskProvider<CreateCentralBundleTask> bundleTask = project.getTasks().register("create" + capitalize(publication.getName()) + "PublicationCentralBundle", CreateCentralBundleTask.class, task -> {
+            configureAssembly(task);
+            task.setPublication(publication);
+        });
         TaskProvider<PublishToCentralTask> publishTask = project.getTasks().register(taskName, PublishToCentralTask.class, task -> {
-            task.setGroup(PublishingPlugin.PUBLISH_TASK_GROUP);
-            task.getPublishingType().value(project.provider(() -> publishingType));
-            task.getCredentials().value(project.provider(this::getCredentials));
+            configureTask(task, bundleTask);
             task.setPublication(publication);
         });
         project.getTasks().named(GradleCentralPublisherPlugin.CENTRAL_PUBLISH_LIFECYCLE).configure(t -> t.dependsOn(publishTask));
     }
 
-    // @formatter:off
-    private static final class PasswordCredentialsImpl implements PasswordCredentials {
-        private @Nullable String username;
-        private @Nullable String password;
-        @Override public @Nullable String getUsername() { return username; }
-        @Override public @Nullable String getPassword() { return password; }
-        @Override public void setUsername(@Nullable String username) { this.username = username; }
-        @Override public void setPassword(@Nullable String password) { this.password = password; }
+    /**
+     * Add the given publication to this project's aggregate bundle.
+     * <p>
+     * All aggregated publications are uploaded in a single bundle, as a single deployment,
+     * by the {@value #AGGREGATE_TASK} task. Publications may come from any project.
+     *
+     * @param publication The publication.
+     */
+    public void aggregatePublication(MavenPublication publication) {
+        claimPublication(publication, project.absoluteProjectPath(AGGREGATE_TASK));
+        TaskProvider<CreateCentralBundleTask> bundleTask;
+        TaskProvider<PublishToCentralTask> aggregateTask;
+        if (!project.getTasks().getNames().contains(AGGREGATE_TASK)) {
+            bundleTask = project.getTasks().register(AGGREGATE_BUNDLE_TASK, CreateCentralBundleTask.class, task -> {
+                task.setDescription("Creates a single bundle containing all aggregated publications.");
+                configureAssembly(task);
+            });
+            aggregateTask = project.getTasks().register(AGGREGATE_TASK, PublishToCentralTask.class, task -> {
+                task.setDescription("Publishes all aggregated publications to the maven central publisher portal, as a single deployment.");
+                configureTask(task, bundleTask);
+            });
+            project.getTasks().named(GradleCentralPublisherPlugin.CENTRAL_PUBLISH_LIFECYCLE).configure(t -> t.dependsOn(aggregateTask));
+        } else {
+            bundleTask = project.getTasks().named(AGGREGATE_BUNDLE_TASK, CreateCentralBundleTask.class);
+            aggregateTask = project.getTasks().named(AGGREGATE_TASK, PublishToCentralTask.class);
+        }
+        bundleTask.configure(task -> task.addPublication(publication));
+        aggregateTask.configure(task -> task.addPublication(publication));
+    }
+
+    /**
+     * Add the publication with the given name, from this project and all subprojects
+     * which apply {@code maven-publish}, to this project's aggregate bundle.
+     *
+     * @param publicationName The name of the publication.
+     * @see #aggregatePublication(MavenPublication)
+     */
+    public void aggregateAllProjects(String publicationName) {
+        project.allprojects(p -> p.getPluginManager().withPlugin("maven-publish", plugin -> p.getExtensions()
+                .getByType(PublishingExtension.class)
+                .getPublications()
+                .withType(MavenPublication.class)
+                .matching(e -> e.getName().equals(publicationName))
+                .all(this::aggregatePublication)
+        ));
+    }
+
+    /**
+     * Record that the given task publishes the given publication, failing if any task
+     * in the build already does, as it would otherwise be uploaded twice, as two deployments.
+     */
+    @SuppressWarnings ("unchecked")
+    private void claimPublication(MavenPublication publication, String taskPath) {
+        ExtraPropertiesExtension extra = project.getGradle().getExtensions().getExtraProperties();
+        if (!extra.has(CLAIMED_PUBLICATIONS)) {
+            extra.set(CLAIMED_PUBLICATIONS, new IdentityHashMap<MavenPublication, String>());
+        }
+        Map<MavenPublication, String> claimed = (Map<MavenPublication, String>) extra.get(CLAIMED_PUBLICATIONS);
+        String existing = claimed.putIfAbsent(publication, taskPath);
+        if (existing != null) {
+            throw new InvalidUserDataException("Publication " + publication.getName() + " is already published by " + existing + ", it can't also be published by " + taskPath + ".");
+        }
+    }
+
+    private void configureTask(PublishToCentralTask task, TaskProvider<CreateCentralBundleTask> bundleTask) {
+        Provider<CentralPortalService> portal = registerPortalService();
+        Provider<ReleaseTrainService> releaseTrain = registerReleaseTrain(portal);
+        configureAssembly(task);
+        task.usesService(portal);
+        task.usesService(releaseTrain);
+        task.getPortal().value(portal);
+        task.getReleaseTrain().value(releaseTrain);
+        task.getPublishingType().value(project.provider(() -> publishingType));
+        task.getCredentials().value(credentialsProvider());
+        task.getWaitForState().value(project.provider(() -> waitForState));
+        task.getWaitTimeout().value(project.provider(() -> waitTimeout));
+        if (!streamBundle) {
+            task.getBundle().value(bundleTask.flatMap(CreateCentralBundleTask::getBundleFile));
+        }
+    }
+
+    private void configureAssembly(AbstractBundleTask task) {
+        Provider<ChecksumCacheService> cacheService = registerChecksumCache();
+        task.setGroup(PublishingPlugin.PUBLISH_TASK_GROUP);
+        task.usesService(cacheService);
+        task.getChecksumCache().value(cacheService);
+        task.getUseChecksumCache().value(project.provider(() -> checksumCache));
+        task.getCompression().value(project.provider(this::getCompression));
+        task.getVerifyChecksums().value(project.provider(() -> verifyChecksums));
+        // Linked lazily, so the key and password are only read when the bundle is created.
+        task.getSigningKeyId().value(signingKeyId);
+        task.getSigningKey().value(signingKey);
+        task.getSigningPassword().value(signingPassword);
+        task.getAssemblyParallelism().value(project.provider(() -> parallelAssembly ? project.getGradle().getStartParameter().getMaxWorkerCount() : 1));
+    }
+
+    // The credentials block if used, otherwise the credentials from Gradle properties, which are read lazily.
+    Provider<PasswordCredentials> credentialsProvider() {
+        return project.provider(() -> credentials.getUsername() != null || credentials.getPassword() != null ? credentials : null)
+                .orElse(propertyCredentials);
+    }
+
+    Provider<CentralPortalService> registerPortalService() {
+        return project.getGradle().getSharedServices().registerIfAbsent(CentralPortalService.NAME, CentralPortalService.class, spec -> {
+            spec.getParameters().getConnectTimeout().set(project.provider(() -> connectTimeout));
+            spec.getParameters().getSocketTimeout().set(project.provider(() -> socketTimeout));
+            spec.getParameters().getMaxRetries().set(project.provider(() -> uploadRetries));
+            spec.getParameters().getMaxUploadBytesPerSecond().set(project.provider(() -> maxUploadBytesPerSecond));
+            spec.getParameters().getEndpoint().set(project.provider(() -> endpoint));
+            spec.getParameters().getLocalPortal().set(project.provider(() -> localPortal));
+        });
+    }
+
+    private Provider<ReleaseTrainService> registerReleaseTrain(Provider<CentralPortalService> portal) {
+        return project.getGradle().getSharedServices().registerIfAbsent(ReleaseTrainService.NAME, ReleaseTrainService.class, spec -> {
+            spec.getParameters().getPortal().set(portal);
+            spec.getParameters().getMaxConcurrentUploads().set(project.provider(() -> maxConcurrentUploads));
+            spec.getParameters().getMaxOutstandingDeployments().set(project.provider(() -> maxOutstandingDeployments));
+            spec.getParameters().getMaxPublicationRetries().set(project.provider(() -> maxPublicationRetries));
+            spec.getParameters().getDeploymentTimeout().set(project.provider(() -> waitTimeout));
+            spec.getParameters().getSummaryFile().set(project.getRootProject().getLayout().getBuildDirectory().file("reports/centralPublisher/release-train.json"));
+        });
+    }
+
+    private Provider<ChecksumCacheService> registerChecksumCache() {
+        return project.getGradle().getSharedServices().registerIfAbsent(ChecksumCacheService.NAME, ChecksumCacheService.class, spec -> {
+            spec.getParameters().getCacheFile().set(new File(project.getGradle().getGradleUserHomeDir(), "caches/central-publisher/checksums.txt"));
+            spec.getParameters().getMaxEntries().set(10000);
+        });
     }
-    // @formatter:on
 }
@@ -1,26 +1,31 @@
 package net.covers1624.gcp;
 
+import org.apache.http.entity.ContentType;
+import org.apache.http.entity.mime.content.AbstractContentBody;
+import org.apache.http.entity.mime.content.FileBody;
 import org.gradle.api.artifacts.PublishException;
-import org.gradle.api.artifacts.component.ModuleComponentIdentifier;
 import org.gradle.api.credentials.PasswordCredentials;
 import org.gradle.api.logging.Logger;
 import org.gradle.api.logging.Logging;
 import org.gradle.api.publish.maven.InvalidMavenPublicationException;
-import org.gradle.api.publish.maven.MavenArtifact;
-import org.gradle.api.publish.maven.internal.publisher.MavenNormalizedPublication;
-import org.gradle.internal.Factory;
 import org.jetbrains.annotations.Nullable;
 
-import java.io.ByteArrayInputStream;
-import java.io.File;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.OutputStream;
 import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.nio.file.Path;
-import java.util.Locale;
+import java.security.MessageDigest;
+import java.util.*;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
 import java.util.zip.ZipEntry;
-import java.util.zip.ZipOutputStream;
 
 /**
  * Created by covers1624 on 3/4/24.
@@ -29,82 +34,412 @@ public class CentralPublisher {
 
     private static final Logger LOGGER = Logging.getLogger(CentralPublisher.class);
 
-    public static void publish(MavenNormalizedPublication publication, PasswordCredentials credentials, String publishingType, Path tempDir) {
-        ModuleComponentIdentifier ident = publication.getProjectIdentity();
-        // At least I think it doesn't support them.
-        if (ident.getVersion().toUpperCase().endsWith("-SNAPSHOT")) {
-            throw new InvalidMavenPublicationException(publication.getName(), "Central publishing portal does not support snapshot artifacts.");
+    /**
+     * Create a bundle for all the given publications, and write it to the given file.
+     * <p>
+     * The bundle is reproducible, identical artifacts always produce an identical bundle,
+     * unless the artifacts are signed, as signatures are timestamped.
+     * <p>
+     * The bundle's content hash is written alongside it, see {@link #identityFile}, so the
+     * bundle does not need to be read again to identify it when it is uploaded.
+     *
+     * @param bundle The file to write the bundle to.
+     */
+    public static void createBundle(List<PublicationSpec> publications, CompressionPolicy compression, @Nullable ChecksumCache cache, @Nullable ArtifactSigner signer, Path tempDir, int parallelism, boolean verifyChecksums, Path bundle, PublishMetrics metrics) {
+        Path scatterDir = tempDir.resolve("scatter");
+        try {
+            List<BundleEntry> entries = assemble(publications, compression, cache, signer, scatterDir, parallelism, verifyChecksums, metrics);
+            LOGGER.info("Writing bundle to {}", bundle);
+            try {
+                metrics.phase(PublishMetrics.WRITE, () -> {
+                    Files.createDirectories(bundle.getParent());
+                    BundleWriter.writeTo(entries, bundle, metrics);
+                    Files.write(identityFile(bundle), (contentHash(entries) + "\n").getBytes(StandardCharsets.UTF_8));
+                    return null;
+                });
+            } catch (IOException ex) {
+                throw new PublishException("Failed to create bundle.", ex);
+            }
+        } finally {
+            cleanup(scatterDir);
+        }
+    }
+
+    /**
+     * Publish all the given publications to Central, as a single bundle and deployment.
+     * <p>
+     * The bundle is streamed directly into the upload request, and is never written to disk.
+     * Compressed entries are deflated once whilst assembling, to learn their size, and again on
+     * a background thread whilst they are uploaded, see {@link BackgroundDeflateStream}.
+     * <p>
+     * Each phase of the publish is recorded to the given metrics.
+     * <p>
+     * The bundle is checked against Central's requirements before upload, see {@link BundleVerifier}.
+     *
+     * @return The deployment id.
+     */
+    public static String publish(List<PublicationSpec> publications, SonatypeApi api, PasswordCredentials credentials, String publishingType, CompressionPolicy compression, @Nullable ChecksumCache cache, @Nullable ArtifactSigner signer, Path tempDir, int parallelism, boolean verifyChecksums, PublishMetrics metrics, UploadScheduler scheduler, ThrottledHttpEntity.@Nullable Listener progress) {
+        List<BundleEntry> entries = assemble(publications, compression, cache, signer, null, parallelism, verifyChecksums, metrics);
+        return upload(api, credentials, publishingType, bundleIdentity(contentHash(entries), publishingType), () -> new BundleContentBody(entries, bundleName(publications), metrics), tempDir, metrics, scheduler, progress);
+    }
+
+    /**
+     * Publish a bundle previously written by {@link #createBundle}.
+     *
+     * @param bundle    The bundle.
+     * @param scheduler Decides when the upload may start.
+     * @param progress  Receives upload progress, if any.
+     * @return The deployment id.
+     */
+    public static String publishBundle(Path bundle, SonatypeApi api, PasswordCredentials credentials, String publishingType, Path tempDir, PublishMetrics metrics, UploadScheduler scheduler, ThrottledHttpEntity.@Nullable Listener progress) {
+        if (Files.notExists(bundle)) throw new PublishException("Bundle " + bundle + " does not exist.");
+
+        String hash;
+        try {
+            Path identityFile = identityFile(bundle);
+            if (Files.exists(identityFile)) {
+                hash = new String(Files.readAllBytes(identityFile), StandardCharsets.UTF_8).trim();
+            } else {
+                // Not written by createBundle, the hash of the zip itself will have to do.
+                LOGGER.info("No content hash for bundle {}, hashing it instead.", bundle);
+                hash = Utils.hashFile("SHA-256", bundle);
+            }
+        } catch (IOException ex) {
+            throw new PublishException("Failed to hash bundle.", ex);
         }
-        Path bundle = tempDir.resolve(ident.getModule() + "-" + ident.getVersion() + ".zip");
-        LOGGER.info("Creating bundle for {}:{}:{} at {}", ident.getGroup(), ident.getModule(), ident.getVersion(), bundle);
+        return upload(api, credentials, publishingType, bundleIdentity(hash, publishingType), () -> new FileBody(bundle.toFile(), ContentType.APPLICATION_OCTET_STREAM), tempDir, metrics, scheduler, progress);
+    }
+
+    /**
+     * @param bundle The bundle.
+     * @return The file {@link #createBundle} writes the bundle's content hash to.
+     */
+    public static Path identityFile(Path bundle) {
+        return bundle.resolveSibling(bundle.getFileName() + ".identity");
+    }
+
+    /**
+     * Validate, prepare, and verify all entries for a bundle.
+     * <p>
+     * Entries are sorted by name, so the bundle's layout does not depend on publication or artifact order.
+     */
+    private static List<BundleEntry> assemble(List<PublicationSpec> publications, CompressionPolicy compression, @Nullable ChecksumCache cache, @Nullable ArtifactSigner signer, @Nullable Path scatterDir, int parallelism, boolean verifyChecksums, PublishMetrics metrics) {
+        if (publications.isEmpty()) throw new IllegalArgumentException("Expected at least one publication.");
 
-        try (ZipOutputStream zos = new ZipOutputStream(Files.newOutputStream(bundle))) {
-            for (MavenArtifact artifact : publication.getAllArtifacts()) {
-                writeToZip(zos, ident, artifact);
+        Set<String> seen = new HashSet<>();
+        for (PublicationSpec publication : publications) {
+            // At least I think it doesn't support them.
+            if (publication.version.toUpperCase().endsWith("-SNAPSHOT")) {
+                throw new InvalidMavenPublicationException(publication.name, "Central publishing portal does not support snapshot artifacts.");
             }
+            if (signer != null && publication.artifacts.stream().anyMatch(e -> e.extension.endsWith(".asc"))) {
+                throw new InvalidMavenPublicationException(publication.name, "Publication is already signed. Either remove the signing plugin, or disable in-process signing.");
+            }
+            if (!seen.add(publication.getCoordinates())) {
+                throw new InvalidMavenPublicationException(publication.name, "Multiple publications for " + publication.getCoordinates() + " in the same bundle.");
+            }
+            LOGGER.info("Creating bundle for {}", publication.getCoordinates());
+        }
+
+        List<BundleEntry> entries;
+        try {
+            entries = metrics.phase(PublishMetrics.ASSEMBLE, () -> prepareEntries(publications, compression, cache, signer, scatterDir, parallelism, metrics));
         } catch (IOException ex) {
             throw new PublishException("Failed to create bundle.", ex);
         }
-        LOGGER.info("Bundle created.");
+        entries.sort(Comparator.comparing(e -> e.name));
 
+        try {
+            metrics.phase(PublishMetrics.VERIFY, () -> {
+                BundleVerifier.verifyLayout(entries);
+                if (verifyChecksums) {
+                    BundleVerifier.verifyChecksums(entries, parallelism);
+                }
+                return null;
+            });
+        } catch (IOException ex) {
+            throw new PublishException("Failed to verify bundle.", ex);
+        }
+        return entries;
+    }
+
+    private static String upload(SonatypeApi api, PasswordCredentials credentials, String publishingType, String bundleIdentity, Supplier<AbstractContentBody> body, Path tempDir, PublishMetrics metrics, UploadScheduler scheduler, ThrottledHttpEntity.@Nullable Listener progress) {
+        LOGGER.info("Bundle identity: {}", bundleIdentity);
+        // A deployment can only be reused from the same portal.
+        MessageDigest digest = Utils.getDigest("SHA-256");
+        digest.update((api.getEndpoint() + "\n" + bundleIdentity).getBytes(StandardCharsets.UTF_8));
+        String identity = Utils.finishHash(digest);
+
+        DeploymentRecord record = readRecord(tempDir);
+        if (record != null && record.bundleSha256.equals(identity)) {
+            LOGGER.lifecycle("Bundle is identical to deployment {}, skipping upload. Delete {} to force a new upload.", record.deploymentId, DeploymentRecord.file(tempDir));
+            metrics.recordDeployment(record.deploymentId);
+            return record.deploymentId;
+        }
+
+        MeasuredContentBody measured = new MeasuredContentBody(body.get());
         LOGGER.info("Uploading bundle..");
         String bundleId;
         try {
-            bundleId = SonatypeApi.uploadBundle(credentials, bundle, publishingType);
+            bundleId = scheduler.upload(measured.getContentLength(), () -> metrics.phase(PublishMetrics.UPLOAD, () -> api.uploadBundle(credentials, measured, publishingType, progress)));
+            metrics.recordUpload(measured.getBytes(), measured.getWriteNanos(), System.nanoTime() - measured.getWriteEnd());
+            metrics.recordDeployment(bundleId);
+            // Only once uploaded, a failed upload keeps the record of the last deployment.
+            new DeploymentRecord(identity, bundleId).write(tempDir);
         } catch (IOException e) {
             throw new PublishException("Failed to upload bundle.", e);
         }
         LOGGER.lifecycle("Uploaded to Central with bundle id: {}", bundleId);
+        return bundleId;
+    }
+
+    private static String bundleName(List<PublicationSpec> publications) {
+        if (publications.size() == 1) {
+            PublicationSpec publication = publications.get(0);
+            return publication.artifactId + "-" + publication.version + ".zip";
+        }
+        return "aggregate-bundle.zip";
+    }
+
+    private static void cleanup(Path scatterDir) {
+        try {
+            Utils.deleteDirectory(scatterDir);
+        } catch (IOException ex) {
+            LOGGER.warn("Failed to cleanup scatter directory {}", scatterDir, ex);
+        }
+    }
+
+    /**
+     * Compute a stable hash of a bundle's content, from the names and content of all its entries.
+     * <p>
+     * Unlike a hash of the zip itself, this does not require reading any artifacts,
+     * and is not affected by zip metadata, or compression.
+     */
+    static String contentHash(List<BundleEntry> entries) {
+        List<BundleEntry> sorted = new ArrayList<>(entries);
+        sorted.sort(Comparator.comparing(e -> e.name));
+        MessageDigest digest = Utils.getDigest("SHA-256");
+        for (BundleEntry entry : sorted) {
+            digest.update((entry.name + "\n" + entry.sha256 + "\n").getBytes(StandardCharsets.UTF_8));
+        }
+        return Utils.finishHash(digest);
     }
 
-    private static void writeToZip(ZipOutputStream zos, ModuleComponentIdentifier ident, MavenArtifact artifact) throws IOException {
-        writeToZip(
-                zos,
-                new ZipEntry(fullNameAndPath(ident.getGroup(), ident.getModule(), ident.getVersion(), artifact.getClassifier(), artifact.getExtension())),
-                artifact.getFile()
-        );
-        writeHashesToZip(zos, ident, artifact);
+    // The same content published differently is a different deployment.
+    static String bundleIdentity(String contentHash, String publishingType) {
+        MessageDigest digest = Utils.getDigest("SHA-256");
+        digest.update((publishingType + "\n" + contentHash).getBytes(StandardCharsets.UTF_8));
+        return Utils.finishHash(digest);
     }
 
-    private static void writeHashesToZip(ZipOutputStream zos, ModuleComponentIdentifier ident, MavenArtifact artifact) throws IOException {
-        writeHashToZip(zos, ident, artifact, "MD5");
-        writeHashToZip(zos, ident, artifact, "SHA-1");
-        writeHashToZip(zos, ident, artifact, "SHA-256");
-        writeHashToZip(zos, ident, artifact, "SHA-512");
+    private static @Nullable DeploymentRecord readRecord(Path tempDir) {
+        try {
+            return DeploymentRecord.read(tempDir);
+        } catch (IOException ex) {
+            LOGGER.warn("Failed to read previous deployment record.", ex);
+            return null;
+        }
     }
 
-    private static void writeHashToZip(ZipOutputStream zos, ModuleComponentIdentifier ident, MavenArtifact artifact, String alg) throws IOException {
-        String ext = alg.toLowerCase(Locale.ROOT).replace("-", "");
-        writeToZip(
-                zos,
-                new ZipEntry(fullNameAndPath(ident.getGroup(), ident.getModule(), ident.getVersion(), artifact.getClassifier(), artifact.getExtension() + "." + ext)),
-                () -> new ByteArrayInputStream(hash(artifact, alg))
-        );
+    /**
+     * Prepare all entries for the bundle, hashing, signing and compressing each artifact concurrently.
+     * <p>
+     * The returned entries are always in the publications' artifact order, regardless
+     * of the order in which they finished preparing.
+     *
+     * @param publications The publications.
+     * @param compression  The compression policy.
+     * @param cache        The checksum cache, if enabled.
+     * @param signer       The signer, if artifacts should be signed.
+     * @param scatterDir   The directory to store compressed artifacts in, prior to being written to the bundle.
+     *                     If {@code null}, artifacts are compressed again each time their entry is read.
+     * @param parallelism  The maximum number of artifacts to prepare at once.
+     * @param metrics      The metrics to record to.
+     * @return The entries.
+     */
+    private static List<BundleEntry> prepareEntries(List<PublicationSpec> publications, CompressionPolicy compression, @Nullable ChecksumCache cache, @Nullable ArtifactSigner signer, @Nullable Path scatterDir, int parallelism, PublishMetrics metrics) throws IOException {
+        int numArtifacts = 0;
+        for (PublicationSpec publication : publications) {
+            numArtifacts += publication.artifacts.size();
+        }
+        if (scatterDir != null) {
+            Utils.deleteDirectory(scatterDir);
+            Files.createDirectories(scatterDir);
+        }
+
+        ForkJoinPool pool = new ForkJoinPool(Math.max(1, Math.min(parallelism, numArtifacts)));
+        try {
+            List<ForkJoinTask<List<BundleEntry>>> tasks = new ArrayList<>(numArtifacts);
+            for (PublicationSpec publication : publications) {
+                for (PublicationSpec.ArtifactSpec artifact : publication.artifacts) {
+                    Path scatterFile = scatterDir != null ? scatterDir.resolve(tasks.size() + ".deflate") : null;
+                    tasks.add(pool.submit(() -> prepareArtifact(publication, artifact, compression, cache, signer, scatterFile, metrics)));
+                }
+            }
+            List<BundleEntry> entries = new ArrayList<>();
+            for (ForkJoinTask<List<BundleEntry>> task : tasks) {
+                entries.addAll(Utils.join(task));
+            }
+            return entries;
+        } finally {
+            pool.shutdownNow();
+        }
     }
 
-    private static void writeToZip(ZipOutputStream zos, ZipEntry entry, File file) throws IOException {
-        writeToZip(zos, entry, () -> Files.newInputStream(file.toPath()));
+    private static List<BundleEntry> prepareArtifact(PublicationSpec publication, PublicationSpec.ArtifactSpec artifact, CompressionPolicy compression, @Nullable ChecksumCache cache, @Nullable ArtifactSigner signer, @Nullable Path scatterFile, PublishMetrics metrics) throws IOException {
+        String name = fullNameAndPath(publication.groupId, publication.artifactId, publication.version, artifact.classifier, artifact.extension);
+        return prepareFile(name, artifact.extension, artifact.file.toPath(), compression, cache, signer, scatterFile, metrics);
     }
 
-    private static void writeToZip(ZipOutputStream zos, ZipEntry entry, StreamSupplier supplier) throws IOException {
-        LOGGER.info(" Adding {} to zip.", entry.getName());
-        zos.putNextEntry(entry);
-        try (InputStream is = supplier.open()) {
-            byte[] buf = new byte[4096];
+    /**
+     * Prepare the bundle entries for a single file, along with its checksum entries,
+     * and its signature entries if a signer is provided.
+     *
+     * @param name        The path of the file in the bundle.
+     * @param extension   The extension of the file.
+     * @param file        The file.
+     * @param compression The compression policy.
+     * @param cache       The checksum cache, if enabled.
+     * @param signer      The signer, if artifacts should be signed.
+     * @param scatterFile The file to store compressed data in, if the file is to be compressed.
+     *                    If {@code null}, the compressed data is discarded, and produced again each time the entry is read.
+     * @param metrics     The metrics to record to, if any.
+     * @return The entries.
+     */
+    static List<BundleEntry> prepareFile(String name, String extension, Path file, CompressionPolicy compression, @Nullable ChecksumCache cache, @Nullable ArtifactSigner signer, @Nullable Path scatterFile, @Nullable PublishMetrics metrics) throws IOException {
+        long start = System.nanoTime();
+
+        // If the checksums are cached, we can skip hashing entirely.
+        ChecksumCache.Entry cached = cache != null ? cache.get(file, MultiHasher.BUNDLE_ALGORITHMS) : null;
+        MultiHasher hasher = cached == null ? new MultiHasher(MultiHasher.BUNDLE_ALGORITHMS) : null;
+        CRC32 crc = cached == null ? new CRC32() : null;
+        ArtifactSigner.Signature signature = signer != null ? signer.begin() : null;
+
+        // Hash, CRC, sign and compress the artifact in the same pass, so it's only read from disk once.
+        boolean stored = compression.isStored(extension);
+        long size;
+        long compressedSize = -1;
+        if (stored) {
+            size = cached != null && signature == null ? cached.size : readArtifact(file, hasher, crc, signature, null);
+        } else {
+            Deflater deflater = new Deflater(compression.getLevel(extension), true);
+            try (OutputStream os = new DeflaterOutputStream(scatterFile != null ? Files.newOutputStream(scatterFile) : Utils.NULL_OUTPUT, deflater, Utils.BUFFER_SIZE)) {
+                size = readArtifact(file, hasher, crc, signature, os);
+            } finally {
+                compressedSize = deflater.getBytesWritten();
+                deflater.end();
+            }
+        }
+
+        long crcValue;
+        Map<String, String> hashes;
+        if (cached != null) {
+            LOGGER.info(" Using cached checksums for {}.", name);
+            crcValue = cached.crc;
+            hashes = cached.hashes;
+        } else {
+            crcValue = crc.getValue();
+            hashes = hasher.finish();
+            if (metrics != null) {
+                metrics.recordHashing(hasher.getNanos());
+            }
+            if (cache != null) {
+                cache.put(file, crcValue, hashes);
+            }
+        }
+
+        BundleEntry entry;
+        if (stored) {
+            entry = BundleEntry.stored(name, crcValue, size, hashes.get("SHA-256"), file);
+        } else if (scatterFile != null) {
+            entry = BundleEntry.deflated(name, crcValue, size, hashes.get("SHA-256"), scatterFile);
+        } else {
+            entry = BundleEntry.deflatedOnDemand(name, crcValue, size, compressedSize, hashes.get("SHA-256"), file, compression.getLevel(extension));
+        }
+        logEntry(entry, start, false);
+        if (metrics != null) {
+            metrics.recordPrepared(entry, System.nanoTime() - start);
+        }
+
+        List<BundleEntry> entries = new ArrayList<>(2 * (1 + MultiHasher.BUNDLE_ALGORITHMS.size()));
+        entries.add(entry);
+        addChecksumEntries(entries, name, extension, hashes, compression, metrics);
+
+        if (signature != null) {
+            start = System.nanoTime();
+            byte[] sigBytes = signature.finish();
+            BundleEntry sigEntry = bytesEntry(name + ".asc", extension + ".asc", sigBytes, compression);
+            logEntry(sigEntry, start, true);
+            if (metrics != null) {
+                metrics.recordPrepared(sigEntry, System.nanoTime() - start);
+            }
+            entries.add(sigEntry);
+
+            MultiHasher sigHasher = new MultiHasher(MultiHasher.BUNDLE_ALGORITHMS);
+            sigHasher.update(sigBytes, 0, sigBytes.length);
+            addChecksumEntries(entries, sigEntry.name, extension + ".asc", sigHasher.finish(), compression, metrics);
+        }
+        return entries;
+    }
+
+    private static void addChecksumEntries(List<BundleEntry> entries, String name, String extension, Map<String, String> hashes, CompressionPolicy compression, @Nullable PublishMetrics metrics) {
+        for (String alg : MultiHasher.BUNDLE_ALGORITHMS) {
+            String algExt = alg.toLowerCase(Locale.ROOT).replace("-", "");
+            long start = System.nanoTime();
+            // The compression policy sees the full extension, e.g. 'jar.sha1'.
+            BundleEntry hashEntry = bytesEntry(name + "." + algExt, extension + "." + algExt, hashes.get(alg).getBytes(StandardCharsets.UTF_8), compression);
+            logEntry(hashEntry, start, true);
+            if (metrics != null) {
+                metrics.recordPrepared(hashEntry, System.nanoTime() - start);
+            }
+            entries.add(hashEntry);
+        }
+    }
+
+    private static long readArtifact(Path file, @Nullable MultiHasher hasher, @Nullable CRC32 crc, ArtifactSigner.@Nullable Signature signature, @Nullable OutputStream os) throws IOException {
+        long size = 0;
+        try (InputStream is = Files.newInputStream(file)) {
+            byte[] buf = new byte[Utils.BUFFER_SIZE];
             int len;
             while ((len = is.read(buf)) != -1) {
-                zos.write(buf, 0, len);
+                if (hasher != null) {
+                    hasher.update(buf, 0, len);
+                }
+                if (crc != null) {
+                    crc.update(buf, 0, len);
+                }
+                if (signature != null) {
+                    signature.update(buf, 0, len);
+                }
+                if (os != null) {
+                    os.write(buf, 0, len);
+                }
+                size += len;
             }
         }
-        zos.closeEntry();
+        return size;
     }
 
-    private static byte[] hash(MavenArtifact artifact, String alg) throws IOException {
-        return Utils.hashFile(alg, artifact.getFile().toPath())
-                .getBytes(StandardCharsets.UTF_8);
+    private static BundleEntry bytesEntry(String name, String extension, byte[] bytes, CompressionPolicy compression) {
+        if (compression.isStored(extension)) {
+            return BundleEntry.stored(name, bytes);
+        }
+        return BundleEntry.deflated(name, bytes, compression.getLevel(extension));
     }
 
-    private static String fullNameAndPath(String group, String artifact, String version, @Nullable String classifier, String extension) {
+    private static void logEntry(BundleEntry entry, long start, boolean debug) {
+        long ms = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+        String method = entry.method == ZipEntry.STORED ? "stored" : "deflated";
+        double ratio = entry.size == 0 ? 100 : entry.compressedSize * 100D / entry.size;
+        String msg = String.format(" Prepared %s (%s, %d -> %d bytes, %.1f%%) in %dms.", entry.name, method, entry.size, entry.compressedSize, ratio, ms);
+        if (debug) {
+            LOGGER.debug(msg);
+        } else {
+            LOGGER.info(msg);
+        }
+    }
+
+    static String fullNameAndPath(String group, String artifact, String version, @Nullable String classifier, String extension) {
         return group.replace('.', '/')
                + "/" + artifact
                + "/" + version
@@ -113,9 +448,4 @@ public class CentralPublisher {
                + (classifier != null ? "-" + classifier : "")
                + "." + extension;
     }
-
-    private interface StreamSupplier {
-
-        InputStream open() throws IOException;
-    }
 }
@@ -0,0 +1,252 @@
+package net.covers1624.gcp;
+
+import org.gradle.api.logging.Logger;
+import org.gradle.api.logging.Logging;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.zip.CRC32;
+
+/**
+ * A persistent cache of artifact checksums, shared across builds.
+ * <p>
+ * Entries are keyed by the absolute path of the file, and validated against its
+ * size, last modified time and a fingerprint of the first and last blocks of the file.
+ * <p>
+ * The cache is bounded, evicting the least recently used entries when saved. It is
+ * safe to use from multiple threads, lookups only lock to record their access, all
+ * file I/O for validating an entry happens outside the lock. Multiple processes may
+ * {@link #save} to the same file, their changes are merged under a file lock.
+ * <p>
+ * Created by covers1624 on 18/10/26.
+ */
+class ChecksumCache {
+
+    private static final Logger LOGGER = Logging.getLogger(ChecksumCache.class);
+
+    private static final int VERSION = 1;
+    private static final int FINGERPRINT_BLOCK = 64 * 1024;
+
+    private final Path file;
+    private final Path lockFile;
+    private final int maxEntries;
+
+    private final Map<String, Entry> entries = new ConcurrentHashMap<>();
+    private volatile boolean loaded;
+    // Guarded by this.
+    private boolean dirty;
+
+    public ChecksumCache(Path file, int maxEntries) {
+        this.file = file;
+        this.maxEntries = maxEntries;
+        lockFile = file.resolveSibling(file.getFileName() + ".lock");
+    }
+
+    /**
+     * Lookup the checksums of the given file.
+     *
+     * @param path       The file.
+     * @param algorithms The hash algorithms which are required.
+     * @return The cache entry, or {@code null} if there is no valid entry for the file.
+     */
+    public @Nullable Entry get(Path path, Collection<String> algorithms) throws IOException {
+        load();
+        String key = path.toAbsolutePath().toString();
+        Entry entry = entries.get(key);
+        if (entry == null) return null;
+
+        BasicFileAttributes attrs = Files.readAttributes(path, BasicFileAttributes.class);
+        if (entry.size != attrs.size() || entry.lastModified != attrs.lastModifiedTime().toMillis() || !entry.hashes.keySet().containsAll(algorithms)) {
+            return null;
+        }
+        if (entry.fingerprint != fingerprint(path, attrs.size())) {
+            return null;
+        }
+
+        synchronized (this) {
+            entry.lastAccess = System.currentTimeMillis();
+            dirty = true;
+        }
+        return entry;
+    }
+
+    /**
+     * Store the checksums of the given file.
+     *
+     * @param path   The file.
+     * @param crc    The CRC32 of the file.
+     * @param hashes The hex encoded hashes, keyed by algorithm.
+     */
+    public void put(Path path, long crc, Map<String, String> hashes) throws IOException {
+        load();
+        BasicFileAttributes attrs = Files.readAttributes(path, BasicFileAttributes.class);
+        Entry entry = new Entry(attrs.size(), attrs.lastModifiedTime().toMillis(), fingerprint(path, attrs.size()), crc, new LinkedHashMap<>(hashes), System.currentTimeMillis());
+        synchronized (this) {
+            // Under the lock, so the entry is not lost if a save is replacing the map.
+            entries.put(path.toAbsolutePath().toString(), entry);
+            dirty = true;
+        }
+    }
+
+    /**
+     * Save the cache to disk, merging with any changes made by other processes.
+     */
+    public synchronized void save() throws IOException {
+        if (!dirty) return;
+
+        Files.createDirectories(file.getParent());
+        try (FileChannel channel = FileChannel.open(lockFile, StandardOpenOption.CREATE, StandardOpenOption.WRITE)) {
+            // Held across the read and write, so concurrent builds merge rather than clobber each other.
+            FileLock lock = channel.lock();
+            try {
+                Map<String, Entry> merged = new HashMap<>();
+                read(merged);
+                for (Map.Entry<String, Entry> e : entries.entrySet()) {
+                    Entry existing = merged.get(e.getKey());
+                    if (existing == null || existing.lastAccess <= e.getValue().lastAccess) {
+                        merged.put(e.getKey(), e.getValue());
+                    }
+                }
+
+                List<Map.Entry<String, Entry>> sorted = new ArrayList<>(merged.entrySet());
+                sorted.sort(Comparator.comparingLong((Map.Entry<String, Entry> e) -> e.getValue().lastAccess).reversed());
+                if (sorted.size() > maxEntries) {
+                    LOGGER.info("Evicting {} entries from checksum cache.", sorted.size() - maxEntries);
+                    sorted = sorted.subList(0, maxEntries);
+                }
+
+                Path tmp = file.resolveSibling(file.getFileName() + ".tmp");
+                try (BufferedWriter writer = Files.newBufferedWriter(tmp, StandardCharsets.UTF_8)) {
+                    writer.write("v" + VERSION);
+                    writer.newLine();
+                    for (Map.Entry<String, Entry> e : sorted) {
+                        writer.write(e.getValue().serialize(e.getKey()));
+                        writer.newLine();
+                    }
+                }
+                Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+
+                entries.clear();
+                for (Map.Entry<String, Entry> e : sorted) {
+                    entries.put(e.getKey(), e.getValue());
+                }
+                dirty = false;
+            } finally {
+                lock.release();
+            }
+        }
+    }
+
+    private void load() throws IOException {
+        if (loaded) return;
+        synchronized (this) {
+            if (loaded) return;
+            try {
+                read(entries);
+            } finally {
+                loaded = true;
+            }
+        }
+    }
+
+    private void read(Map<String, Entry> into) throws IOException {
+        if (Files.notExists(file)) return;
+
+        try (BufferedReader reader = Files.newBufferedReader(file, StandardCharsets.UTF_8)) {
+            if (!("v" + VERSION).equals(reader.readLine())) {
+                LOGGER.info("Ignoring checksum cache {} with unknown version.", file);
+                return;
+            }
+            String line;
+            while ((line = reader.readLine()) != null) {
+                try {
+                    String[] split = line.split("\t");
+                    Map<String, String> hashes = new LinkedHashMap<>();
+                    for (int i = 6; i < split.length; i++) {
+                        int eq = split[i].indexOf('=');
+                        hashes.put(split[i].substring(0, eq), split[i].substring(eq + 1));
+                    }
+                    into.put(split[0], new Entry(
+                            Long.parseLong(split[1]),
+                            Long.parseLong(split[2]),
+                            Long.parseLong(split[3]),
+                            Long.parseLong(split[4]),
+                            hashes,
+                            Long.parseLong(split[5])
+                    ));
+                } catch (RuntimeException ex) {
+                    LOGGER.debug("Skipping malformed checksum cache line: {}", line, ex);
+                }
+            }
+        } catch (NoSuchFileException ignored) {
+        }
+    }
+
+    /**
+     * Compute a cheap fingerprint of the file, from its first and last blocks.
+     * <p>
+     * This guards against tools which rewrite files whilst preserving their modified time.
+     */
+    private static long fingerprint(Path path, long size) throws IOException {
+        CRC32 crc = new CRC32();
+        ByteBuffer buf = ByteBuffer.allocate(FINGERPRINT_BLOCK);
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            readBlock(channel, 0, buf, crc);
+            if (size > FINGERPRINT_BLOCK) {
+                readBlock(channel, Math.max(FINGERPRINT_BLOCK, size - FINGERPRINT_BLOCK), buf, crc);
+            }
+        }
+        return crc.getValue();
+    }
+
+    private static void readBlock(FileChannel channel, long pos, ByteBuffer buf, CRC32 crc) throws IOException {
+        buf.clear();
+        int len;
+        while (buf.hasRemaining() && (len = channel.read(buf, pos)) != -1) {
+            pos += len;
+        }
+        crc.update(buf.array(), 0, buf.position());
+    }
+
+    public static final class Entry {
+
+        public final long size;
+        public final long lastModified;
+        public final long fingerprint;
+        public final long crc;
+        public final Map<String, String> hashes;
+        private long lastAccess;
+
+        private Entry(long size, long lastModified, long fingerprint, long crc, Map<String, String> hashes, long lastAccess) {
+            this.size = size;
+            this.lastModified = lastModified;
+            this.fingerprint = fingerprint;
+            this.crc = crc;
+            this.hashes = hashes;
+            this.lastAccess = lastAccess;
+        }
+
+        private String serialize(String key) {
+            StringBuilder sb = new StringBuilder(key)
+                    .append('\t').append(size)
+                    .append('\t').append(lastModified)
+                    .append('\t').append(fingerprint)
+                    .append('\t').append(crc)
+                    .append('\t').append(lastAccess);
+            for (Map.Entry<String, String> hash : hashes.entrySet()) {
+                sb.append('\t').append(hash.getKey()).append('=').append(hash.getValue());
+            }
+            return sb.toString();
+        }
+    }
+}
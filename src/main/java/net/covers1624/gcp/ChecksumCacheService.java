@@ -0,0 +1,54 @@
+package net.covers1624.gcp;
+
+import org.gradle.api.file.RegularFileProperty;
+import org.gradle.api.logging.Logger;
+import org.gradle.api.logging.Logging;
+import org.gradle.api.provider.Property;
+import org.gradle.api.services.BuildService;
+import org.gradle.api.services.BuildServiceParameters;
+import org.jetbrains.annotations.ApiStatus;
+
+import java.io.IOException;
+
+/**
+ * Shares a single {@link ChecksumCache} between all publish tasks in a build,
+ * saving it once the build completes.
+ * <p>
+ * Created by covers1624 on 18/10/26.
+ */
+@ApiStatus.Internal
+public abstract class ChecksumCacheService implements BuildService<ChecksumCacheService.Parameters>, AutoCloseable {
+
+    public static final String NAME = "centralPublisherChecksumCache";
+
+    private static final Logger LOGGER = Logging.getLogger(ChecksumCacheService.class);
+
+    private final ChecksumCache cache;
+
+    public ChecksumCacheService() {
+        cache = new ChecksumCache(
+                getParameters().getCacheFile().get().getAsFile().toPath(),
+                getParameters().getMaxEntries().get()
+        );
+    }
+
+    ChecksumCache getCache() {
+        return cache;
+    }
+
+    @Override
+    public void close() {
+        try {
+            cache.save();
+        } catch (IOException ex) {
+            LOGGER.warn("Failed to save checksum cache.", ex);
+        }
+    }
+
+    public interface Parameters extends BuildServiceParameters {
+
+        RegularFileProperty getCacheFile();
+
+        Property<Integer> getMaxEntries();
+    }
+}
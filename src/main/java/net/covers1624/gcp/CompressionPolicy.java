@@ -0,0 +1,119 @@
+package net.covers1624.gcp;
+
+import java.io.Serializable;
+import java.util.*;
+import java.util.zip.Deflater;
+
+/**
+ * Decides how each bundle entry is compressed, based on its file extension.
+ * <p>
+ * Artifacts which are already compressed (jars and friends) gain next to nothing
+ * from being deflated again, so by default these are stored as-is.
+ * <p>
+ * Created by covers1624 on 18/10/26.
+ */
+public class CompressionPolicy implements Serializable {
+
+    private static final long serialVersionUID = 1L;
+
+    private final Set<String> stored = new HashSet<>(Arrays.asList("jar", "war", "ear", "zip", "aar", "klib"));
+    private final Map<String, Integer> levels = new HashMap<>();
+    private int defaultLevel = Deflater.DEFAULT_COMPRESSION;
+
+    /**
+     * Store entries with the given extensions without compression.
+     *
+     * @param extensions The extensions, without the leading dot.
+     */
+    public void store(String... extensions) {
+        for (String ext : extensions) {
+            String e = normalize(ext);
+            levels.remove(e);
+            stored.add(e);
+        }
+    }
+
+    /**
+     * Deflate entries with the given extension at the given level.
+     * <p>
+     * This overrides any previous {@link #store} for the extension.
+     *
+     * @param extension The extension, without the leading dot.
+     * @param level     The {@link Deflater} level, 0-9.
+     */
+    public void level(String extension, int level) {
+        String e = normalize(extension);
+        stored.remove(e);
+        levels.put(e, checkLevel(level));
+    }
+
+    /**
+     * Remove all stored extensions and per-extension levels, deflating everything
+     * at the default level.
+     */
+    public void clear() {
+        stored.clear();
+        levels.clear();
+    }
+
+    public int getDefaultLevel() {
+        return defaultLevel;
+    }
+
+    /**
+     * Set the level used for all extensions which are not explicitly stored or
+     * have their own level.
+     *
+     * @param level The {@link Deflater} level, 0-9, or {@link Deflater#DEFAULT_COMPRESSION}.
+     */
+    public void setDefaultLevel(int level) {
+        defaultLevel = checkLevel(level);
+    }
+
+    /**
+     * @return The extensions which are stored without compression, sorted.
+     */
+    public List<String> getStoredExtensions() {
+        return new ArrayList<>(new TreeSet<>(stored));
+    }
+
+    /**
+     * @return The per-extension {@link Deflater} levels, sorted by extension.
+     */
+    public SortedMap<String, Integer> getLevels() {
+        return new TreeMap<>(levels);
+    }
+
+    /**
+     * @param extension The extension of the entry. For {@code foo.jar.sha1} this is {@code jar.sha1}.
+     * @return If the entry should be stored, without compression.
+     */
+    public boolean isStored(String extension) {
+        return stored.contains(lastExtension(extension));
+    }
+
+    /**
+     * @param extension The extension of the entry. For {@code foo.jar.sha1} this is {@code jar.sha1}.
+     * @return The {@link Deflater} level to use for the entry.
+     */
+    public int getLevel(String extension) {
+        Integer level = levels.get(lastExtension(extension));
+        return level != null ? level : defaultLevel;
+    }
+
+    private static String lastExtension(String extension) {
+        return normalize(extension.substring(extension.lastIndexOf('.') + 1));
+    }
+
+    private static String normalize(String extension) {
+        if (extension.startsWith(".")) extension = extension.substring(1);
+        return extension.toLowerCase(Locale.ROOT);
+    }
+
+    private static int checkLevel(int level) {
+        if (level != Deflater.DEFAULT_COMPRESSION && (level < 0 || level > 9)) {
+            throw new IllegalArgumentException("Invalid compression level " + level + ". Expected 0-9 or -1.");
+        }
+        return level;
+    }
+}
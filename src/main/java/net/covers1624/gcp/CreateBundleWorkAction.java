@@ -0,0 +1,130 @@
+package net.covers1624.gcp;
+
+import org.gradle.api.artifacts.PublishException;
+import org.gradle.api.file.DirectoryProperty;
+import org.gradle.api.file.RegularFileProperty;
+import org.gradle.api.logging.Logger;
+import org.gradle.api.logging.Logging;
+import org.gradle.api.model.ObjectFactory;
+import org.gradle.api.provider.ListProperty;
+import org.gradle.api.provider.Property;
+import org.gradle.workers.WorkAction;
+import org.gradle.workers.WorkParameters;
+import org.jetbrains.annotations.ApiStatus;
+import org.jetbrains.annotations.Nullable;
+
+import javax.inject.Inject;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.List;
+
+/**
+ * Validates, assembles and writes a bundle to disk, on behalf of {@link CreateCentralBundleTask}.
+ * <p>
+ * Must be run without isolation, as it shares the build's {@link ChecksumCacheService}.
+ * <p>
+ * Created by covers1624 on 18/10/26.
+ */
+@ApiStatus.Internal
+public abstract class CreateBundleWorkAction implements WorkAction<CreateBundleWorkAction.Parameters> {
+
+    private static final Logger LOGGER = Logging.getLogger(CreateBundleWorkAction.class);
+
+    @Inject
+    protected abstract ObjectFactory getObjects();
+
+    @Override
+    public void execute() {
+        Parameters params = getParameters();
+        List<PublicationSpec> publications = params.getPublications().get();
+        Path bundle = params.getBundleFile().get().getAsFile().toPath();
+
+        PublishMetrics metrics = new PublishMetrics(BuildOperationPhaseRunner.create(getObjects(), params.getTaskPath().get()));
+        try {
+            validate(publications, metrics);
+            CentralPublisher.createBundle(publications, params.getCompression().get(), getCache(params), loadSigner(params), params.getTemporaryDir().get().getAsFile().toPath(), params.getAssemblyParallelism().get(), params.getVerifyChecksums().get(), bundle, metrics);
+        } catch (Throwable ex) {
+            throw new PublishException("Failed to create bundle for " + params.getPublicationNames().get() + ".", ex);
+        } finally {
+            writeReport(metrics, params.getReportFile().get().getAsFile().toPath());
+        }
+        LOGGER.lifecycle(metrics.summary());
+    }
+
+    static void validate(List<PublicationSpec> publications, PublishMetrics metrics) throws IOException {
+        metrics.phase(PublishMetrics.VALIDATE, () -> {
+            for (PublicationSpec publication : publications) {
+                SimplePublicationValidator.validatePublication(publication);
+            }
+            return null;
+        });
+    }
+
+    static @Nullable ChecksumCache getCache(AssemblyParameters params) {
+        ChecksumCacheService cacheService = params.getChecksumCache().getOrNull();
+        return cacheService != null ? cacheService.getCache() : null;
+    }
+
+    static @Nullable ArtifactSigner loadSigner(AssemblyParameters params) {
+        String signingKey = params.getSigningKey().getOrNull();
+        return signingKey != null ? ArtifactSigner.load(params.getSigningKeyId().getOrNull(), signingKey, params.getSigningPassword().get()) : null;
+    }
+
+    static void writeReport(PublishMetrics metrics, Path report) {
+        try {
+            metrics.writeReport(report);
+            LOGGER.info("Wrote report to {}", report);
+        } catch (IOException ex) {
+            LOGGER.warn("Failed to write report to {}", report, ex);
+        }
+    }
+
+    /**
+     * Parameters shared by all work actions for a bundle.
+     */
+    public interface BundleParameters extends WorkParameters {
+
+        /**
+         * The names of the publications in the bundle, for messages.
+         */
+        Property<String> getPublicationNames();
+
+        /**
+         * The coordinates of the publications in the bundle.
+         */
+        Property<String> getPublicationCoordinates();
+
+        DirectoryProperty getTemporaryDir();
+
+        RegularFileProperty getReportFile();
+
+        Property<String> getTaskPath();
+    }
+
+    /**
+     * Parameters shared by all work actions which assemble a bundle.
+     */
+    public interface AssemblyParameters extends BundleParameters {
+
+        ListProperty<PublicationSpec> getPublications();
+
+        Property<CompressionPolicy> getCompression();
+
+        Property<ChecksumCacheService> getChecksumCache();
+
+        Property<Integer> getAssemblyParallelism();
+
+        Property<Boolean> getVerifyChecksums();
+
+        Property<String> getSigningKeyId();
+
+        Property<String> getSigningKey();
+
+        Property<String> getSigningPassword();
+    }
+
+    public interface Parameters extends AssemblyParameters {
+
+        RegularFileProperty getBundleFile();
+    }
+}
@@ -0,0 +1,74 @@
+package net.covers1624.gcp;
+
+import org.gradle.api.file.RegularFile;
+import org.gradle.api.file.RegularFileProperty;
+import org.gradle.api.provider.Provider;
+import org.gradle.api.tasks.CacheableTask;
+import org.gradle.api.tasks.OutputFile;
+import org.gradle.api.tasks.TaskAction;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Creates a bundle for one or more publications, ready to be uploaded by {@link PublishToCentralTask}.
+ * <p>
+ * The bundle is reproducible, so this task can be restored from the build cache,
+ * unless artifacts are signed in-process, as signatures are timestamped.
+ * <p>
+ * Created by covers1624 on 18/10/26.
+ */
+@CacheableTask
+public abstract class CreateCentralBundleTask extends AbstractBundleTask {
+
+    private final RegularFileProperty bundleFile = getObjects().fileProperty()
+            .convention(getLayout().getBuildDirectory().file("centralPublisher/" + getName() + ".zip"));
+
+    public CreateCentralBundleTask() {
+        // Which file ends up where in the bundle. The content of each file is tracked by the publishable files.
+        Provider<List<String>> layout = getPublications().map(pubs -> {
+            List<String> entries = new ArrayList<>();
+            for (PublicationSpec publication : pubs) {
+                for (PublicationSpec.ArtifactSpec artifact : publication.artifacts) {
+                    String path = CentralPublisher.fullNameAndPath(publication.groupId, publication.artifactId, publication.version, artifact.classifier, artifact.extension);
+                    entries.add(path + " <- " + artifact.file.getName());
+                }
+            }
+            return entries;
+        });
+        getInputs().property("publication.layout", layout);
+        // Sorted values, so the cache key does not depend on the policy's serialized form.
+        getInputs().property("compression.stored", getCompression().map(CompressionPolicy::getStoredExtensions));
+        getInputs().property("compression.levels", getCompression().map(CompressionPolicy::getLevels));
+        getInputs().property("compression.defaultLevel", getCompression().map(CompressionPolicy::getDefaultLevel));
+        getInputs().property("signed", getSigningKey().map(e -> true).orElse(false));
+
+        getOutputs().doNotCacheIf("Signatures are not reproducible.", t -> getSigningKey().isPresent());
+    }
+
+    /**
+     * The file to write the bundle to.
+     */
+    @OutputFile
+    public RegularFileProperty getBundleFile() {
+        return bundleFile;
+    }
+
+    /**
+     * The file the bundle's content hash is written to, next to the bundle.
+     * Used by {@link PublishToCentralTask} to identify the bundle, without reading it.
+     */
+    @OutputFile
+    public Provider<RegularFile> getIdentityFile() {
+        return getLayout().file(bundleFile.map(f -> CentralPublisher.identityFile(f.getAsFile().toPath()).toFile()));
+    }
+
+    @TaskAction
+    public void createBundle() {
+        // No isolation, the worker shares this build's checksum cache.
+        getWorkerExecutor().noIsolation().submit(CreateBundleWorkAction.class, params -> {
+            configureAssembly(params);
+            params.getBundleFile().set(getBundleFile());
+        });
+    }
+}
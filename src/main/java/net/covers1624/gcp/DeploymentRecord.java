@@ -0,0 +1,72 @@
+package net.covers1624.gcp;
+
+import org.jetbrains.annotations.Nullable;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Properties;
+
+/**
+ * Records the identity of the last bundle built by a task, and the deployment it
+ * was uploaded as.
+ * <p>
+ * Allows a re-run with identical content to skip the upload, instead of
+ * creating a duplicate deployment.
+ * <p>
+ * Created by covers1624 on 18/10/26.
+ */
+class DeploymentRecord {
+
+    private static final String FILE_NAME = "deployment.properties";
+
+    /**
+     * The SHA-256 identity of the bundle's content.
+     */
+    public final String bundleSha256;
+    /**
+     * The deployment id the bundle was uploaded as.
+     */
+    public final String deploymentId;
+
+    public DeploymentRecord(String bundleSha256, String deploymentId) {
+        this.bundleSha256 = bundleSha256;
+        this.deploymentId = deploymentId;
+    }
+
+    public static Path file(Path tempDir) {
+        return tempDir.resolve(FILE_NAME);
+    }
+
+    public static @Nullable DeploymentRecord read(Path tempDir) throws IOException {
+        Path file = file(tempDir);
+        if (Files.notExists(file)) return null;
+
+        Properties props = new Properties();
+        try (InputStream is = Files.newInputStream(file)) {
+            props.load(is);
+        }
+        String sha256 = props.getProperty("bundle.sha256");
+        String deploymentId = props.getProperty("deployment.id");
+        if (sha256 == null || deploymentId == null) return null;
+        return new DeploymentRecord(sha256, deploymentId);
+    }
+
+    public void write(Path tempDir) throws IOException {
+        Properties props = new Properties();
+        props.setProperty("bundle.sha256", bundleSha256);
+        props.setProperty("deployment.id", deploymentId);
+        try (OutputStream os = Files.newOutputStream(file(tempDir))) {
+            props.store(os, null);
+        }
+    }
+
+    /**
+     * Forget any recorded deployment, forcing the next run to upload.
+     */
+    public static void forget(Path tempDir) throws IOException {
+        Files.deleteIfExists(file(tempDir));
+    }
+}
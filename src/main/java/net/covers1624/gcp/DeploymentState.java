@@ -0,0 +1,52 @@
+package net.covers1624.gcp;
+
+import java.util.Locale;
+
+/**
+ * The states a deployment moves through in the Central Publisher Portal.
+ * <p>
+ * Created by covers1624 on 18/10/26.
+ */
+public enum DeploymentState {
+    /**
+     * Uploaded, waiting to be processed.
+     */
+    PENDING,
+    /**
+     * Being validated.
+     */
+    VALIDATING,
+    /**
+     * Passed validation. {@link PublishingType#USER_MANGED} deployments stop here, awaiting approval.
+     */
+    VALIDATED,
+    /**
+     * Being published to Maven Central.
+     */
+    PUBLISHING,
+    /**
+     * Published to Maven Central.
+     */
+    PUBLISHED,
+    /**
+     * Failed validation or publishing.
+     */
+    FAILED;
+
+    /**
+     * @param target The target state.
+     * @return If this state is the target state, or a later successful state.
+     */
+    public boolean hasReached(DeploymentState target) {
+        if (this == FAILED || target == FAILED) return this == target;
+        return ordinal() >= target.ordinal();
+    }
+
+    public static DeploymentState parse(String state) {
+        try {
+            return valueOf(state.trim().toUpperCase(Locale.ROOT));
+        } catch (IllegalArgumentException ex) {
+            throw new IllegalArgumentException("Unknown deployment state '" + state + "'.", ex);
+        }
+    }
+}
@@ -0,0 +1,33 @@
+package net.covers1624.gcp;
+
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * The status of a deployment, as returned by the Publisher Portal's status endpoint.
+ * <p>
+ * Created by covers1624 on 18/10/26.
+ */
+class DeploymentStatus {
+
+    private static final Pattern STATE = Pattern.compile("\"deploymentState\"\\s*:\\s*\"([A-Za-z_]+)\"");
+
+    public final String deploymentId;
+    public final DeploymentState state;
+    /**
+     * The raw json response, useful for error reporting.
+     */
+    public final String body;
+
+    public DeploymentStatus(String deploymentId, DeploymentState state, String body) {
+        this.deploymentId = deploymentId;
+        this.state = state;
+        this.body = body;
+    }
+
+    public static DeploymentStatus parse(String deploymentId, String body) {
+        Matcher matcher = STATE.matcher(body);
+        if (!matcher.find()) throw new IllegalArgumentException("Status response for " + deploymentId + " missing deploymentState.\n" + body);
+        return new DeploymentStatus(deploymentId, DeploymentState.parse(matcher.group(1)), body);
+    }
+}
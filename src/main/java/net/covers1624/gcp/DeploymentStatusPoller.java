@@ -0,0 +1,107 @@
+package net.covers1624.gcp;
+
+import org.gradle.api.artifacts.PublishException;
+import org.gradle.api.credentials.PasswordCredentials;
+import org.gradle.api.logging.Logger;
+import org.gradle.api.logging.Logging;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.util.concurrent.*;
+
+/**
+ * Polls the Publisher Portal for deployment status changes, without blocking
+ * a thread per deployment.
+ * <p>
+ * All deployments awaited through a single poller share one scheduler, each
+ * deployment polls with its own exponential backoff.
+ * <p>
+ * Created by covers1624 on 18/10/26.
+ */
+class DeploymentStatusPoller implements AutoCloseable {
+
+    private static final Logger LOGGER = Logging.getLogger(DeploymentStatusPoller.class);
+
+    /**
+     * Starts polling every few seconds, backing off to once a minute.
+     */
+    public static final Backoff DEFAULT_BACKOFF = new Backoff(2000, 60000);
+
+    private final SonatypeApi api;
+    private final PasswordCredentials credentials;
+    private final Backoff backoff;
+    private final ScheduledExecutorService scheduler;
+
+    public DeploymentStatusPoller(SonatypeApi api, PasswordCredentials credentials, Backoff backoff, int threads) {
+        this.api = api;
+        this.credentials = credentials;
+        this.backoff = backoff;
+        scheduler = Executors.newScheduledThreadPool(threads, r -> {
+            Thread thread = new Thread(r, "Central Deployment Poller");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    /**
+     * Wait for the given deployment to reach the target state.
+     * <p>
+     * The returned future completes exceptionally with a {@link PublishException} if the deployment
+     * fails, or with a {@link TimeoutException} if the target state is not reached in time.
+     * <p>
+     * Connection failures, rate limiting and server errors are retried until the timeout. Any other failure
+     * to poll, such as bad credentials, an unknown deployment or an unreadable response, completes the future
+     * exceptionally with an {@link IOException}, as polling again would not help.
+     *
+     * @param deploymentId The deployment id.
+     * @param target       The state to wait for.
+     * @param timeout      The maximum time to wait.
+     * @return The future.
+     */
+    public CompletableFuture<DeploymentStatus> await(String deploymentId, DeploymentState target, Duration timeout) {
+        CompletableFuture<DeploymentStatus> future = new CompletableFuture<>();
+        long deadline = System.nanoTime() + timeout.toNanos();
+        scheduler.execute(() -> poll(deploymentId, target, future, 0, deadline));
+        return future;
+    }
+
+    private void poll(String deploymentId, DeploymentState target, CompletableFuture<DeploymentStatus> future, int attempt, long deadline) {
+        if (future.isDone()) return;
+
+        try {
+            DeploymentStatus status = api.getDeploymentStatus(credentials, deploymentId);
+            LOGGER.info("Deployment {} is {}.", deploymentId, status.state);
+            if (status.state == DeploymentState.FAILED) {
+                future.completeExceptionally(new PublishException("Deployment " + deploymentId + " failed.\n" + status.body));
+                return;
+            }
+            if (status.state.hasReached(target)) {
+                future.complete(status);
+                return;
+            }
+        } catch (IOException ex) {
+            // Checking the status has no side effects, it is always safe to send again.
+            if (!SonatypeApi.isRetryable(ex, false)) {
+                future.completeExceptionally(new IOException("Failed to poll status of deployment " + deploymentId + ".", ex));
+                return;
+            }
+            LOGGER.warn("Failed to poll status of deployment {}. Retrying.", deploymentId, ex);
+        } catch (RuntimeException ex) {
+            // The response could not be parsed, or has a state we don't know.
+            future.completeExceptionally(new IOException("Failed to read status of deployment " + deploymentId + ".", ex));
+            return;
+        }
+
+        long delay = backoff.delay(attempt);
+        if (System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(delay) > deadline) {
+            future.completeExceptionally(new TimeoutException("Timed out waiting for deployment " + deploymentId + " to reach " + target + "."));
+            return;
+        }
+        scheduler.schedule(() -> poll(deploymentId, target, future, attempt + 1, deadline), delay, TimeUnit.MILLISECONDS);
+    }
+
+    @Override
+    public void close() {
+        scheduler.shutdownNow();
+    }
+}
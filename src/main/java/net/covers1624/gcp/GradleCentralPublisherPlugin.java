@@ -2,6 +2,7 @@ package net.covers1624.gcp;
 
 import org.gradle.api.Plugin;
 import org.gradle.api.Project;
+import org.gradle.api.provider.Provider;
 import org.gradle.api.publish.maven.plugins.MavenPublishPlugin;
 import org.gradle.api.publish.plugins.PublishingPlugin;
 
@@ -11,6 +12,7 @@ import org.gradle.api.publish.plugins.PublishingPlugin;
 public class GradleCentralPublisherPlugin implements Plugin<Project> {
 
     public static final String CENTRAL_PUBLISH_LIFECYCLE = "publishToMavenCentral";
+    public static final String AWAIT_DEPLOYMENTS = "awaitCentralDeployments";
 
     @Override
     public void apply(Project project) {
@@ -20,6 +22,15 @@ public class GradleCentralPublisherPlugin implements Plugin<Project> {
             t.setGroup(PublishingPlugin.PUBLISH_TASK_GROUP);
         });
         project.getTasks().named(PublishingPlugin.PUBLISH_LIFECYCLE_TASK_NAME).configure(e -> e.dependsOn(CENTRAL_PUBLISH_LIFECYCLE));
-        project.getExtensions().create("centralPublishing", CentralPublishExtension.class, project);
+        CentralPublishExtension extension = project.getExtensions().create("centralPublishing", CentralPublishExtension.class, project);
+        project.getTasks().register(AWAIT_DEPLOYMENTS, AwaitCentralDeploymentsTask.class, t -> {
+            t.setDescription("Waits for the given deployments to reach a given state in the maven central publisher portal.");
+            t.setGroup(PublishingPlugin.PUBLISH_TASK_GROUP);
+            t.getCredentials().value(extension.credentialsProvider());
+            t.getTimeout().value(project.provider(() -> extension.waitTimeout));
+            Provider<CentralPortalService> portal = extension.registerPortalService();
+            t.usesService(portal);
+            t.getPortal().value(portal);
+        });
     }
 }
@@ -0,0 +1,457 @@
+package net.covers1624.gcp;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import org.gradle.api.InvalidUserDataException;
+import org.gradle.api.logging.Logger;
+import org.gradle.api.logging.Logging;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.*;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipInputStream;
+
+/**
+ * An embedded stand-in for the publishing portal's upload and status endpoints.
+ * <p>
+ * Uploaded bundles are read as they are received, checked with {@link BundleVerifier},
+ * then move through the same states a real deployment would. Latency, transient upload
+ * failures and failed deployments can be simulated, see {@link LocalPortalOptions}.
+ * <p>
+ * Nothing uploaded here ever reaches Maven Central. Intended for testing and benchmarking
+ * publishing without a network.
+ * <p>
+ * Created by covers1624 on 18/10/26.
+ */
+class LocalPortal implements Closeable {
+
+    private static final Logger LOGGER = Logging.getLogger(LocalPortal.class);
+
+    private static final Pattern BOUNDARY = Pattern.compile("boundary=\"?([^\";]+)\"?");
+    private static final int MAX_PART_HEADERS = 8192;
+
+    private final LocalPortalOptions options;
+    private final HttpServer server;
+    private final ExecutorService executor;
+    private final Random random;
+    private final Map<String, Deployment> deployments = new ConcurrentHashMap<>();
+
+    private LocalPortal(LocalPortalOptions options, HttpServer server, ExecutorService executor) {
+        this.options = options;
+        this.server = server;
+        this.executor = executor;
+        random = new Random(options.seed);
+    }
+
+    /**
+     * Start a local portal, listening on the loopback address.
+     *
+     * @param options The options.
+     * @return The running portal.
+     */
+    public static LocalPortal start(LocalPortalOptions options) throws IOException {
+        HttpServer server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), options.port), 0);
+        AtomicInteger threads = new AtomicInteger();
+        // Unbounded, so concurrent uploads are limited by the client, not by us.
+        ExecutorService executor = Executors.newCachedThreadPool(r -> {
+            Thread thread = new Thread(r, "Local Portal " + threads.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+        server.setExecutor(executor);
+
+        LocalPortal portal = new LocalPortal(options, server, executor);
+        server.createContext("/api/v1/publisher/upload", portal::handleUpload);
+        server.createContext("/api/v1/publisher/status", portal::handleStatus);
+        server.start();
+        LOGGER.warn("Publishing to a local portal at {}. Nothing will be published to Maven Central.", portal.getEndpoint());
+        return portal;
+    }
+
+    /**
+     * @return The api endpoint of this portal, for use with {@link SonatypeApi}.
+     */
+    public String getEndpoint() {
+        InetSocketAddress address = server.getAddress();
+        return "http://" + address.getHostString() + ":" + address.getPort() + "/api";
+    }
+
+    private void handleUpload(HttpExchange ex) throws IOException {
+        try {
+            if (!checkRequest(ex)) return;
+
+            String publishingType = query(ex).get("publishingType");
+            if (publishingType == null) {
+                respond(ex, 400, "Missing publishingType.");
+                return;
+            }
+
+            if (nextDouble() < options.uploadFailureRate) {
+                drain(ex.getRequestBody());
+                respond(ex, 503, "Simulated upload failure.");
+                return;
+            }
+
+            String contentType = ex.getRequestHeaders().getFirst("Content-Type");
+            Matcher matcher = contentType != null ? BOUNDARY.matcher(contentType) : null;
+            if (matcher == null || !matcher.find()) {
+                drain(ex.getRequestBody());
+                respond(ex, 400, "Expected a multipart upload.");
+                return;
+            }
+
+            String deploymentId = UUID.randomUUID().toString();
+            List<String> names;
+            try {
+                names = readBundle(ex.getRequestBody(), matcher.group(1), deploymentId);
+            } catch (IOException e) {
+                LOGGER.warn("Local portal rejected upload: {}", e.getMessage());
+                drain(ex.getRequestBody());
+                respond(ex, 400, "Invalid bundle: " + e.getMessage());
+                return;
+            }
+
+            String error = null;
+            try {
+                BundleVerifier.verifyLayout(names);
+            } catch (InvalidUserDataException e) {
+                error = e.getMessage();
+            }
+            if (error == null && nextDouble() < options.deploymentFailureRate) {
+                error = "Simulated deployment failure.";
+            }
+            deployments.put(deploymentId, new Deployment(deploymentId, publishingType.equalsIgnoreCase("AUTOMATIC"), names.size(), error));
+            LOGGER.info("Local portal accepted deployment {} with {} files.", deploymentId, names.size());
+            respond(ex, 201, deploymentId);
+        } finally {
+            ex.close();
+        }
+    }
+
+    private void handleStatus(HttpExchange ex) throws IOException {
+        try {
+            if (!checkRequest(ex)) return;
+
+            String id = query(ex).get("id");
+            Deployment deployment = id != null ? deployments.get(id) : null;
+            if (deployment == null) {
+                respond(ex, 404, "Unknown deployment " + id);
+                return;
+            }
+            respond(ex, 200, deployment.toJson());
+        } finally {
+            ex.close();
+        }
+    }
+
+    // Applies simulated latency, and checks the request is authenticated, as the real portal would.
+    private boolean checkRequest(HttpExchange ex) throws IOException {
+        sleep(options.latency.toMillis());
+        if (!"POST".equals(ex.getRequestMethod())) {
+            drain(ex.getRequestBody());
+            respond(ex, 405, "Expected POST.");
+            return false;
+        }
+        String auth = ex.getRequestHeaders().getFirst("Authorization");
+        if (auth == null || !auth.startsWith("Bearer ")) {
+            drain(ex.getRequestBody());
+            respond(ex, 401, "Missing credentials.");
+            return false;
+        }
+        return true;
+    }
+
+    /**
+     * Read the bundle part of the multipart request, returning the names of all files within.
+     * <p>
+     * Each file is read fully, so the CRC of every entry is checked.
+     */
+    private List<String> readBundle(InputStream body, String boundary, String deploymentId) throws IOException {
+        InputStream is = new BufferedInputStream(body, Utils.BUFFER_SIZE);
+        skipPartHeaders(is, boundary);
+        InputStream part = new PartInputStream(is, boundary);
+
+        Path file = options.bundleDirectory != null ? options.bundleDirectory.toPath().resolve(deploymentId + ".zip") : null;
+        OutputStream copy = null;
+        if (file != null) {
+            Files.createDirectories(file.getParent());
+            copy = new BufferedOutputStream(Files.newOutputStream(file), Utils.BUFFER_SIZE);
+        }
+        OutputStream tee = copy;
+        InputStream data = tee == null ? part : new FilterInputStream(part) {
+            @Override
+            public int read() throws IOException {
+                int b = super.read();
+                if (b != -1) tee.write(b);
+                return b;
+            }
+
+            @Override
+            public int read(byte[] b, int off, int len) throws IOException {
+                int n = super.read(b, off, len);
+                if (n > 0) tee.write(b, off, n);
+                return n;
+            }
+        };
+
+        List<String> names = new ArrayList<>();
+        try {
+            ZipInputStream zin = new ZipInputStream(data);
+            byte[] buf = new byte[Utils.BUFFER_SIZE];
+            ZipEntry entry;
+            while ((entry = zin.getNextEntry()) != null) {
+                while (zin.read(buf) != -1) {
+                    // Read fully, so the CRC is checked.
+                }
+                names.add(entry.getName());
+            }
+            // The central directory, up to the next boundary.
+            drain(data);
+        } finally {
+            if (copy != null) {
+                copy.close();
+            }
+        }
+        // Any further parts, the closing boundary and epilogue.
+        drain(is);
+        if (names.isEmpty()) throw new IOException("Bundle is empty.");
+        return names;
+    }
+
+    // Skips any preamble, the first boundary line, and the headers of the first part.
+    private static void skipPartHeaders(InputStream is, String boundary) throws IOException {
+        String delimiter = "--" + boundary;
+        int[] remaining = { MAX_PART_HEADERS };
+        String line;
+        do {
+            line = readLine(is, remaining);
+        } while (!isDelimiter(line, delimiter));
+        do {
+            line = readLine(is, remaining);
+        } while (!line.isEmpty());
+    }
+
+    // The delimiter line may be followed by transport padding.
+    private static boolean isDelimiter(String line, String delimiter) {
+        if (!line.startsWith(delimiter)) return false;
+        for (int i = delimiter.length(); i < line.length(); i++) {
+            char c = line.charAt(i);
+            if (c != ' ' && c != '\t') return false;
+        }
+        return true;
+    }
+
+    // Reads a line ending in either CRLF or LF, without the line ending.
+    private static String readLine(InputStream is, int[] remaining) throws IOException {
+        ByteArrayOutputStream line = new ByteArrayOutputStream();
+        while (true) {
+            if (remaining[0]-- <= 0) throw new IOException("Multipart headers too large.");
+            int b = is.read();
+            if (b == -1) throw new EOFException("Unexpected end of multipart body.");
+            if (b == '\n') break;
+            line.write(b);
+        }
+        byte[] bytes = line.toByteArray();
+        int len = bytes.length > 0 && bytes[bytes.length - 1] == '\r' ? bytes.length - 1 : bytes.length;
+        return new String(bytes, 0, len, StandardCharsets.ISO_8859_1);
+    }
+
+    private synchronized double nextDouble() {
+        return random.nextDouble();
+    }
+
+    private static Map<String, String> query(HttpExchange ex) throws UnsupportedEncodingException {
+        Map<String, String> params = new HashMap<>();
+        String query = ex.getRequestURI().getRawQuery();
+        if (query == null) return params;
+        for (String pair : query.split("&")) {
+            int eq = pair.indexOf('=');
+            if (eq == -1) continue;
+            params.put(URLDecoder.decode(pair.substring(0, eq), "UTF-8"), URLDecoder.decode(pair.substring(eq + 1), "UTF-8"));
+        }
+        return params;
+    }
+
+    private static void respond(HttpExchange ex, int status, String body) throws IOException {
+        byte[] bytes = body.getBytes(StandardCharsets.UTF_8);
+        ex.sendResponseHeaders(status, bytes.length);
+        try (OutputStream os = ex.getResponseBody()) {
+            os.write(bytes);
+        }
+    }
+
+    private static void drain(InputStream is) throws IOException {
+        byte[] buf = new byte[Utils.BUFFER_SIZE];
+        while (is.read(buf) != -1) {
+            // Discard.
+        }
+    }
+
+    private static void sleep(long millis) throws InterruptedIOException {
+        if (millis <= 0) return;
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted whilst simulating latency.");
+        }
+    }
+
+    @Override
+    public void close() {
+        server.stop(0);
+        executor.shutdownNow();
+    }
+
+    /**
+     * The body of a single multipart part, ending before the next boundary delimiter.
+     * <p>
+     * The line ending preceding the delimiter belongs to the delimiter, and may be
+     * either CRLF or LF. The delimiter itself, and anything after it, is left unread.
+     */
+    private static final class PartInputStream extends InputStream {
+
+        private final InputStream in;
+        private final byte[] delimiter;
+        private final byte[] buf;
+        private int pos;
+        private int limit;
+        private boolean eof;
+        private boolean done;
+
+        private PartInputStream(InputStream in, String boundary) {
+            this.in = in;
+            delimiter = ("\r\n--" + boundary).getBytes(StandardCharsets.ISO_8859_1);
+            buf = new byte[Utils.BUFFER_SIZE + delimiter.length];
+        }
+
+        @Override
+        public int read() throws IOException {
+            byte[] b = new byte[1];
+            return read(b, 0, 1) == -1 ? -1 : b[0] & 0xFF;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            if (len == 0) return 0;
+            while (!done) {
+                int safe = scan();
+                if (safe > 0) {
+                    int n = Math.min(safe, len);
+                    System.arraycopy(buf, pos, b, off, n);
+                    pos += n;
+                    return n;
+                }
+                if (done) break;
+                if (eof) throw new EOFException("Missing closing multipart boundary.");
+                fill();
+            }
+            return -1;
+        }
+
+        // Returns the number of buffered bytes which are certainly part of the body.
+        private int scan() {
+            for (int i = pos; i < limit; i++) {
+                if (buf[i] != '\r' && buf[i] != '\n') continue;
+
+                int start = buf[i] == '\r' ? 0 : 1;
+                int needed = delimiter.length - start;
+                if (limit - i < needed) {
+                    // Not enough buffered to tell, unless nothing more is coming.
+                    return eof ? limit - pos : i - pos;
+                }
+                if (matches(i, start)) {
+                    if (i == pos) done = true;
+                    return i - pos;
+                }
+            }
+            return limit - pos;
+        }
+
+        private boolean matches(int at, int start) {
+            for (int j = start; j < delimiter.length; j++) {
+                if (buf[at + j - start] != delimiter[j]) return false;
+            }
+            return true;
+        }
+
+        private void fill() throws IOException {
+            if (pos > 0) {
+                System.arraycopy(buf, pos, buf, 0, limit - pos);
+                limit -= pos;
+                pos = 0;
+            }
+            int n = in.read(buf, limit, buf.length - limit);
+            if (n == -1) {
+                eof = true;
+            } else {
+                limit += n;
+            }
+        }
+    }
+
+    private final class Deployment {
+
+        private final String id;
+        private final boolean automatic;
+        private final int files;
+        private final @Nullable String error;
+        private final long created = System.nanoTime();
+
+        private Deployment(String id, boolean automatic, int files, @Nullable String error) {
+            this.id = id;
+            this.automatic = automatic;
+            this.files = files;
+            this.error = error;
+        }
+
+        // Deployments move through each state in turn, spending stateDelay in each.
+        private DeploymentState getState() {
+            List<DeploymentState> states = new ArrayList<>(Arrays.asList(DeploymentState.PENDING, DeploymentState.VALIDATING));
+            if (error != null) {
+                states.add(DeploymentState.FAILED);
+            } else {
+                states.add(DeploymentState.VALIDATED);
+                if (automatic) {
+                    states.add(DeploymentState.PUBLISHING);
+                    states.add(DeploymentState.PUBLISHED);
+                }
+            }
+            long delay = options.stateDelay.toNanos();
+            long step = delay <= 0 ? Long.MAX_VALUE : (System.nanoTime() - created) / delay;
+            return states.get((int) Math.min(step, states.size() - 1));
+        }
+
+        private String toJson() {
+            DeploymentState state = getState();
+            StringBuilder sb = new StringBuilder();
+            sb.append("{\"deploymentId\":\"").append(id).append("\"");
+            sb.append(",\"deploymentName\":\"local-").append(id).append(".zip\"");
+            sb.append(",\"deploymentState\":\"").append(state).append("\"");
+            sb.append(",\"fileCount\":").append(files);
+            sb.append(",\"purls\":[]");
+            if (state == DeploymentState.FAILED) {
+                sb.append(",\"errors\":{\"bundle\":[\"").append(escape(error)).append("\"]}");
+            }
+            return sb.append("}").toString();
+        }
+    }
+
+    private static String escape(@Nullable String str) {
+        if (str == null) return "";
+        return str.replace("\\", "\\\\").replace("\"", "\\\"").replace("\n", "\\n");
+    }
+}
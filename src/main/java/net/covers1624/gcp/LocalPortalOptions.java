@@ -0,0 +1,51 @@
+package net.covers1624.gcp;
+
+import org.jetbrains.annotations.Nullable;
+
+import java.io.File;
+import java.io.Serializable;
+import java.time.Duration;
+
+/**
+ * Options for the embedded stand-in for the publishing portal.
+ * <p>
+ * Created by covers1624 on 18/10/26.
+ *
+ * @see CentralPublishExtension#useLocalPortal(org.gradle.api.Action)
+ */
+public class LocalPortalOptions implements Serializable {
+
+    private static final long serialVersionUID = 1L;
+
+    /**
+     * The port to listen on, {@code 0} for any free port.
+     */
+    public int port = 0;
+    /**
+     * Extra time taken to respond to every request.
+     */
+    public Duration latency = Duration.ZERO;
+    /**
+     * The time a deployment spends in each state, before moving on to the next.
+     */
+    public Duration stateDelay = Duration.ofSeconds(1);
+    /**
+     * The fraction of uploads, between {@code 0} and {@code 1}, which are rejected with a transient
+     * {@code 503 Service Unavailable}, to exercise upload retries.
+     */
+    public double uploadFailureRate = 0;
+    /**
+     * The fraction of deployments, between {@code 0} and {@code 1}, which fail validation
+     * even when the bundle is valid.
+     */
+    public double deploymentFailureRate = 0;
+    /**
+     * The seed used to decide which uploads and deployments fail.
+     */
+    public long seed = 0;
+    /**
+     * If set, every accepted bundle is written to this directory, as {@code <deployment id>.zip}.
+     * Otherwise, bundles are checked as they are received, and discarded.
+     */
+    public @Nullable File bundleDirectory = null;
+}
@@ -0,0 +1,86 @@
+package net.covers1624.gcp;
+
+import org.apache.http.entity.mime.content.AbstractContentBody;
+
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+
+/**
+ * Wraps another body, recording how many bytes were written and how long that took.
+ * <p>
+ * Only the most recent write is recorded, so retried requests report their final attempt.
+ * <p>
+ * Created by covers1624 on 18/10/26.
+ */
+class MeasuredContentBody extends AbstractContentBody {
+
+    private final AbstractContentBody delegate;
+
+    private volatile long bytes;
+    private volatile long writeNanos;
+    private volatile long writeEnd;
+
+    public MeasuredContentBody(AbstractContentBody delegate) {
+        super(delegate.getContentType());
+        this.delegate = delegate;
+    }
+
+    @Override
+    public void writeTo(OutputStream out) throws IOException {
+        long start = System.nanoTime();
+        long[] count = { 0 };
+        delegate.writeTo(new FilterOutputStream(out) {
+            @Override
+            public void write(int b) throws IOException {
+                out.write(b);
+                count[0]++;
+            }
+
+            @Override
+            public void write(byte[] b, int off, int len) throws IOException {
+                out.write(b, off, len);
+                count[0] += len;
+            }
+        });
+        writeEnd = System.nanoTime();
+        writeNanos = writeEnd - start;
+        bytes = count[0];
+    }
+
+    /**
+     * @return The number of bytes written by the last write.
+     */
+    public long getBytes() {
+        return bytes;
+    }
+
+    /**
+     * @return The time the last write took, in nanoseconds.
+     */
+    public long getWriteNanos() {
+        return writeNanos;
+    }
+
+    /**
+     * @return The {@link System#nanoTime()} the last write finished at.
+     */
+    public long getWriteEnd() {
+        return writeEnd;
+    }
+
+    @Override
+    public String getFilename() {
+        return delegate.getFilename();
+    }
+
+    @Override
+    public String getTransferEncoding() {
+        return delegate.getTransferEncoding();
+    }
+
+    @Override
+    public long getContentLength() {
+        return delegate.getContentLength();
+    }
+}
@@ -0,0 +1,97 @@
+package net.covers1624.gcp;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.util.*;
+
+/**
+ * Computes multiple {@link MessageDigest}s over a single pass of some data.
+ * <p>
+ * Created by covers1624 on 18/10/26.
+ */
+class MultiHasher {
+
+    /**
+     * The hashing algorithms Central expects alongside every file in a bundle.
+     */
+    public static final List<String> BUNDLE_ALGORITHMS = Collections.unmodifiableList(Arrays.asList("MD5", "SHA-1", "SHA-256", "SHA-512"));
+
+    private final String[] algorithms;
+    private final MessageDigest[] digests;
+    private final long[] nanos;
+
+    public MultiHasher(Collection<String> algorithms) {
+        this.algorithms = algorithms.toArray(new String[0]);
+        digests = new MessageDigest[this.algorithms.length];
+        nanos = new long[this.algorithms.length];
+        for (int i = 0; i < digests.length; i++) {
+            digests[i] = Utils.getDigest(this.algorithms[i]);
+        }
+    }
+
+    public void update(byte[] buf, int off, int len) {
+        for (int i = 0; i < digests.length; i++) {
+            long start = System.nanoTime();
+            digests[i].update(buf, off, len);
+            nanos[i] += System.nanoTime() - start;
+        }
+    }
+
+    public void update(ByteBuffer buf) {
+        int pos = buf.position();
+        for (int i = 0; i < digests.length; i++) {
+            long start = System.nanoTime();
+            buf.position(pos);
+            digests[i].update(buf);
+            nanos[i] += System.nanoTime() - start;
+        }
+    }
+
+    /**
+     * Finish all digests.
+     *
+     * @return The hex encoded hashes, keyed by algorithm, in the order the algorithms were provided.
+     */
+    public Map<String, String> finish() {
+        Map<String, String> hashes = new LinkedHashMap<>();
+        for (int i = 0; i < digests.length; i++) {
+            hashes.put(algorithms[i], Utils.finishHash(digests[i]));
+        }
+        return hashes;
+    }
+
+    /**
+     * @return The time spent in each digest, in nanoseconds, keyed by algorithm.
+     */
+    public Map<String, Long> getNanos() {
+        Map<String, Long> map = new LinkedHashMap<>();
+        for (int i = 0; i < algorithms.length; i++) {
+            map.put(algorithms[i], nanos[i]);
+        }
+        return map;
+    }
+
+    /**
+     * Hash the given file with all the given algorithms, reading the file exactly once.
+     *
+     * @param file       The file to hash.
+     * @param algorithms The algorithms.
+     * @return The hex encoded hashes, keyed by algorithm.
+     */
+    public static Map<String, String> hashFile(Path file, Collection<String> algorithms) throws IOException {
+        MultiHasher hasher = new MultiHasher(algorithms);
+        ByteBuffer buf = ByteBuffer.allocateDirect(Utils.BUFFER_SIZE);
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            while (channel.read(buf) != -1) {
+                buf.flip();
+                hasher.update(buf);
+                buf.clear();
+            }
+        }
+        return hasher.finish();
+    }
+}
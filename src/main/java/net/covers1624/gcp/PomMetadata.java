@@ -0,0 +1,162 @@
+package net.covers1624.gcp;
+
+import org.jetbrains.annotations.Nullable;
+
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+import java.io.BufferedInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * The subset of a POM required to validate a publication for Central.
+ * <p>
+ * Read with a streaming parser, skipping over everything else in the POM
+ * (dependencies, build, etc.) without building a model, and stopping as soon
+ * as all required elements have been found.
+ * <p>
+ * Created by covers1624 on 18/10/26.
+ */
+class PomMetadata {
+
+    private static final XMLInputFactory FACTORY;
+
+    static {
+        FACTORY = XMLInputFactory.newFactory();
+        FACTORY.setProperty(XMLInputFactory.SUPPORT_DTD, false);
+        FACTORY.setProperty(XMLInputFactory.IS_SUPPORTING_EXTERNAL_ENTITIES, false);
+        FACTORY.setProperty(XMLInputFactory.IS_COALESCING, true);
+    }
+
+    public @Nullable String groupId;
+    public @Nullable String artifactId;
+    public @Nullable String version;
+    public boolean hasParent;
+    public @Nullable String name;
+    public @Nullable String description;
+    public @Nullable String url;
+    /**
+     * The names of all licenses, {@code null} if the license has no name.
+     */
+    public final List<@Nullable String> licenses = new ArrayList<>();
+    public int developers;
+    public boolean hasScm;
+    public @Nullable String scmUrl;
+
+    /**
+     * Read the given POM.
+     * <p>
+     * The charset is taken from the XML declaration, defaulting to UTF-8.
+     *
+     * @param pom The POM file.
+     * @return The metadata.
+     */
+    public static PomMetadata read(Path pom) throws IOException, XMLStreamException {
+        try (InputStream is = new BufferedInputStream(Files.newInputStream(pom), Utils.BUFFER_SIZE)) {
+            XMLStreamReader reader = FACTORY.createXMLStreamReader(is);
+            try {
+                return read(reader);
+            } finally {
+                reader.close();
+            }
+        }
+    }
+
+    private static PomMetadata read(XMLStreamReader reader) throws XMLStreamException {
+        PomMetadata pom = new PomMetadata();
+        reader.nextTag();
+        if (!reader.getLocalName().equals("project")) {
+            throw new XMLStreamException("Expected <project> root element, got <" + reader.getLocalName() + ">.", reader.getLocation());
+        }
+        while (!pom.isComplete() && reader.nextTag() == XMLStreamConstants.START_ELEMENT) {
+            switch (reader.getLocalName()) {
+                case "groupId":
+                    pom.groupId = reader.getElementText().trim();
+                    break;
+                case "artifactId":
+                    pom.artifactId = reader.getElementText().trim();
+                    break;
+                case "version":
+                    pom.version = reader.getElementText().trim();
+                    break;
+                case "name":
+                    pom.name = reader.getElementText().trim();
+                    break;
+                case "description":
+                    pom.description = reader.getElementText().trim();
+                    break;
+                case "url":
+                    pom.url = reader.getElementText().trim();
+                    break;
+                case "parent":
+                    pom.hasParent = true;
+                    skip(reader);
+                    break;
+                case "licenses":
+                    while (reader.nextTag() == XMLStreamConstants.START_ELEMENT) {
+                        if (reader.getLocalName().equals("license")) {
+                            pom.licenses.add(readChild(reader, "name"));
+                        } else {
+                            skip(reader);
+                        }
+                    }
+                    break;
+                case "developers":
+                    while (reader.nextTag() == XMLStreamConstants.START_ELEMENT) {
+                        if (reader.getLocalName().equals("developer")) {
+                            pom.developers++;
+                        }
+                        skip(reader);
+                    }
+                    break;
+                case "scm":
+                    pom.hasScm = true;
+                    pom.scmUrl = readChild(reader, "url");
+                    break;
+                default:
+                    skip(reader);
+            }
+        }
+        return pom;
+    }
+
+    // Everything we could possibly want has been found, no need to read the rest of the file.
+    // If any of these are missing, we read to the end, as they may be inherited from a parent.
+    private boolean isComplete() {
+        return groupId != null && artifactId != null && version != null
+               && name != null && description != null && url != null
+               && !licenses.isEmpty() && developers != 0 && scmUrl != null;
+    }
+
+    // Reads the text of the given direct child of the current element, skipping everything else.
+    private static @Nullable String readChild(XMLStreamReader reader, String child) throws XMLStreamException {
+        String value = null;
+        while (reader.nextTag() == XMLStreamConstants.START_ELEMENT) {
+            if (reader.getLocalName().equals(child)) {
+                value = reader.getElementText().trim();
+            } else {
+                skip(reader);
+            }
+        }
+        return value;
+    }
+
+    // Skips the current element and all its children, leaving the reader on its end tag.
+    private static void skip(XMLStreamReader reader) throws XMLStreamException {
+        int depth = 1;
+        while (depth != 0) {
+            int event = reader.next();
+            if (event == XMLStreamConstants.START_ELEMENT) {
+                depth++;
+            } else if (event == XMLStreamConstants.END_ELEMENT) {
+                depth--;
+            }
+        }
+    }
+}
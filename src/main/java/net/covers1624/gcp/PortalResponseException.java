@@ -0,0 +1,32 @@
+package net.covers1624.gcp;
+
+import java.io.IOException;
+
+/**
+ * Thrown when the Publisher Portal responds with an unexpected status code.
+ * <p>
+ * Created by covers1624 on 18/10/26.
+ */
+class PortalResponseException extends IOException {
+
+    private static final long serialVersionUID = 1L;
+
+    public final int statusCode;
+    /**
+     * The delay requested by the server via {@code Retry-After}, in milliseconds, or {@code -1}.
+     */
+    public final long retryAfterMillis;
+
+    public PortalResponseException(String message, int statusCode, long retryAfterMillis) {
+        super(message);
+        this.statusCode = statusCode;
+        this.retryAfterMillis = retryAfterMillis;
+    }
+
+    /**
+     * @return If the request may succeed if retried. Only rate limiting and server errors are transient.
+     */
+    public boolean isTransient() {
+        return statusCode == 429 || statusCode >= 500 && statusCode < 600;
+    }
+}
@@ -0,0 +1,92 @@
+package net.covers1624.gcp;
+
+import org.gradle.api.publish.maven.MavenArtifact;
+import org.gradle.api.publish.maven.internal.publication.MavenPublicationInternal;
+import org.gradle.api.publish.maven.internal.publisher.MavenNormalizedPublication;
+import org.jetbrains.annotations.ApiStatus;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.File;
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * A serializable snapshot of everything required to publish a {@link MavenPublicationInternal}.
+ * <p>
+ * Unlike the publication itself, this can be stored in the configuration cache
+ * and passed to worker actions.
+ * <p>
+ * Created by covers1624 on 18/10/26.
+ */
+@ApiStatus.Internal
+public final class PublicationSpec implements Serializable {
+
+    private static final long serialVersionUID = 1L;
+
+    public final String name;
+    public final String groupId;
+    public final String artifactId;
+    public final String version;
+    public final File pomFile;
+    /**
+     * All artifacts in the publication, including the POM.
+     */
+    public final List<ArtifactSpec> artifacts;
+
+    public PublicationSpec(String name, String groupId, String artifactId, String version, File pomFile, List<ArtifactSpec> artifacts) {
+        this.name = name;
+        this.groupId = groupId;
+        this.artifactId = artifactId;
+        this.version = version;
+        this.pomFile = pomFile;
+        this.artifacts = Collections.unmodifiableList(new ArrayList<>(artifacts));
+    }
+
+    /**
+     * Snapshot the given publication.
+     * <p>
+     * The artifact files do not need to exist yet.
+     *
+     * @param publication The publication.
+     * @return The spec.
+     */
+    public static PublicationSpec of(MavenPublicationInternal publication) {
+        MavenNormalizedPublication pub = publication.asNormalisedPublication();
+        List<ArtifactSpec> artifacts = new ArrayList<>();
+        for (MavenArtifact artifact : pub.getAllArtifacts()) {
+            artifacts.add(new ArtifactSpec(artifact.getFile(), artifact.getClassifier(), artifact.getExtension()));
+        }
+        return new PublicationSpec(
+                pub.getName(),
+                pub.getGroupId(),
+                pub.getArtifactId(),
+                pub.getVersion(),
+                pub.getPomArtifact().getFile(),
+                artifacts
+        );
+    }
+
+    /**
+     * @return The {@code group:artifact:version} coordinates of this publication.
+     */
+    public String getCoordinates() {
+        return groupId + ":" + artifactId + ":" + version;
+    }
+
+    public static final class ArtifactSpec implements Serializable {
+
+        private static final long serialVersionUID = 1L;
+
+        public final File file;
+        public final @Nullable String classifier;
+        public final String extension;
+
+        public ArtifactSpec(File file, @Nullable String classifier, String extension) {
+            this.file = file;
+            this.classifier = classifier;
+            this.extension = extension;
+        }
+    }
+}
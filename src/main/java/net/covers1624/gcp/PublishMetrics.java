@@ -0,0 +1,333 @@
+package net.covers1624.gcp;
+
+import org.jetbrains.annotations.ApiStatus;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Collects timings and byte counts for a single publish.
+ * <p>
+ * Each phase of the publish runs through {@link #phase}, allowing the
+ * caller to additionally report phases elsewhere, such as Gradle build operations.
+ * Safe to use from multiple threads.
+ * <p>
+ * Created by covers1624 on 18/10/26.
+ */
+@ApiStatus.Internal
+public class PublishMetrics {
+
+    public static final String VALIDATE = "validate";
+    public static final String ASSEMBLE = "assemble";
+    public static final String VERIFY = "verify";
+    public static final String WRITE = "write";
+    public static final String UPLOAD = "upload";
+    public static final String AWAIT = "await";
+
+    private final PhaseRunner runner;
+    private final long start = System.nanoTime();
+
+    private final Map<String, Long> phaseNanos = Collections.synchronizedMap(new LinkedHashMap<>());
+    private final Map<String, AtomicLong> hashNanos = new ConcurrentHashMap<>();
+    private final Map<String, EntryMetrics> entries = new ConcurrentHashMap<>();
+
+    private volatile long uploadBytes;
+    private volatile long uploadNanos;
+    private volatile long responseNanos;
+    private volatile @Nullable String deploymentId;
+
+    public PublishMetrics(PhaseRunner runner) {
+        this.runner = runner;
+    }
+
+    /**
+     * Run and time a phase of the publish.
+     *
+     * @param name   The name of the phase.
+     * @param action The action.
+     * @return The result of the action.
+     */
+    public <T> T phase(String name, Phase<T> action) throws IOException {
+        long start = System.nanoTime();
+        try {
+            return runner.run(this, name, action);
+        } finally {
+            phaseNanos.merge(name, System.nanoTime() - start, Long::sum);
+        }
+    }
+
+    public void recordHashing(Map<String, Long> nanos) {
+        for (Map.Entry<String, Long> entry : nanos.entrySet()) {
+            hashNanos.computeIfAbsent(entry.getKey(), e -> new AtomicLong()).addAndGet(entry.getValue());
+        }
+    }
+
+    public void recordPrepared(BundleEntry entry, long nanos) {
+        entries.computeIfAbsent(entry.name, EntryMetrics::new).prepared(entry, nanos);
+    }
+
+    public void recordWritten(BundleEntry entry, long nanos) {
+        entries.computeIfAbsent(entry.name, EntryMetrics::new).writeNanos += nanos;
+    }
+
+    /**
+     * @param bytes         The number of bytes sent in the request body.
+     * @param uploadNanos   The time taken to send the request body.
+     * @param responseNanos The time between the request body being sent and the response being received.
+     */
+    public void recordUpload(long bytes, long uploadNanos, long responseNanos) {
+        this.uploadBytes = bytes;
+        this.uploadNanos = uploadNanos;
+        this.responseNanos = responseNanos;
+    }
+
+    public void recordDeployment(String deploymentId) {
+        this.deploymentId = deploymentId;
+    }
+
+    /**
+     * @return The time spent in each phase so far, in milliseconds.
+     */
+    public Map<String, Long> getPhaseMillis() {
+        Map<String, Long> map = new LinkedHashMap<>();
+        synchronized (phaseNanos) {
+            phaseNanos.forEach((k, v) -> map.put(k, millis(v)));
+        }
+        return map;
+    }
+
+    /**
+     * @return The time spent in each hashing algorithm, summed over all threads, in milliseconds.
+     */
+    public Map<String, Long> getHashingMillis() {
+        Map<String, Long> map = new TreeMap<>();
+        hashNanos.forEach((k, v) -> map.put(k, millis(v.get())));
+        return map;
+    }
+
+    public long getUploadBytes() {
+        return uploadBytes;
+    }
+
+    public long getUploadBytesPerSecond() {
+        return throughput(uploadBytes, uploadNanos);
+    }
+
+    public long getResponseMillis() {
+        return millis(responseNanos);
+    }
+
+    public @Nullable String getDeploymentId() {
+        return deploymentId;
+    }
+
+    /**
+     * @return A single line summary of the publish.
+     */
+    public String summary() {
+        StringBuilder sb = new StringBuilder();
+        if (!entries.isEmpty()) {
+            sb.append("Bundled ").append(entries.size()).append(" files");
+            long bytes = entries.values().stream().mapToLong(e -> e.size).sum();
+            sb.append(" (").append(formatBytes(bytes)).append(")");
+        } else {
+            // Publishing a pre-built bundle.
+            sb.append("Published bundle");
+            if (uploadBytes > 0) {
+                sb.append(" (").append(formatBytes(uploadBytes)).append(")");
+            }
+        }
+        sb.append(" in ").append(formatNanos(System.nanoTime() - start));
+        synchronized (phaseNanos) {
+            for (Map.Entry<String, Long> entry : phaseNanos.entrySet()) {
+                sb.append(", ").append(entry.getKey()).append(" ").append(formatNanos(entry.getValue()));
+                if (entry.getKey().equals(UPLOAD) && uploadNanos > 0) {
+                    sb.append(" @ ").append(formatBytes(throughput(uploadBytes, uploadNanos))).append("/s");
+                    sb.append(" (server ").append(formatNanos(responseNanos)).append(")");
+                }
+            }
+        }
+        return sb.toString();
+    }
+
+    /**
+     * Write a machine-readable report of all collected metrics.
+     *
+     * @param file The file to write to.
+     */
+    public void writeReport(Path file) throws IOException {
+        Files.createDirectories(file.getParent());
+        try (BufferedWriter w = Files.newBufferedWriter(file, StandardCharsets.UTF_8)) {
+            w.write("{\n");
+            w.write("  \"deploymentId\": " + jsonString(deploymentId) + ",\n");
+            w.write("  \"totalMillis\": " + millis(System.nanoTime() - start) + ",\n");
+
+            w.write("  \"phases\": {");
+            writeMap(w, getPhaseMillis());
+            w.write("},\n");
+
+            w.write("  \"hashing\": {");
+            writeMap(w, getHashingMillis());
+            w.write("},\n");
+
+            w.write("  \"upload\": {");
+            w.write("\"bytes\": " + uploadBytes);
+            w.write(", \"millis\": " + millis(uploadNanos));
+            w.write(", \"bytesPerSecond\": " + getUploadBytesPerSecond());
+            w.write(", \"responseMillis\": " + getResponseMillis());
+            w.write("},\n");
+
+            w.write("  \"entries\": [");
+            List<EntryMetrics> sorted = new ArrayList<>(entries.values());
+            sorted.sort(Comparator.comparing(e -> e.name));
+            boolean first = true;
+            for (EntryMetrics e : sorted) {
+                w.write(first ? "\n" : ",\n");
+                first = false;
+                w.write("    {\"name\": " + jsonString(e.name)
+                        + ", \"method\": " + jsonString(e.method)
+                        + ", \"size\": " + e.size
+                        + ", \"compressedSize\": " + e.compressedSize
+                        + ", \"prepareMillis\": " + millis(e.prepareNanos)
+                        + ", \"writeMillis\": " + millis(e.writeNanos)
+                        + "}");
+            }
+            w.write(first ? "]\n" : "\n  ]\n");
+            w.write("}\n");
+        }
+    }
+
+    private static void writeMap(BufferedWriter w, Map<String, Long> map) throws IOException {
+        boolean first = true;
+        for (Map.Entry<String, Long> entry : map.entrySet()) {
+            if (!first) w.write(", ");
+            first = false;
+            w.write(jsonString(entry.getKey()) + ": " + entry.getValue());
+        }
+    }
+
+    private static long millis(long nanos) {
+        return TimeUnit.NANOSECONDS.toMillis(nanos);
+    }
+
+    private static long throughput(long bytes, long nanos) {
+        if (nanos <= 0) return 0;
+        return (long) (bytes / (nanos / 1_000_000_000D));
+    }
+
+    static String formatBytes(long bytes) {
+        if (bytes < 1024) return bytes + " B";
+        if (bytes < 1024 * 1024) return String.format("%.1f KiB", bytes / 1024D);
+        if (bytes < 1024 * 1024 * 1024) return String.format("%.1f MiB", bytes / (1024D * 1024));
+        return String.format("%.2f GiB", bytes / (1024D * 1024 * 1024));
+    }
+
+    private static String formatNanos(long nanos) {
+        long ms = millis(nanos);
+        if (ms < 1000) return ms + "ms";
+        return String.format("%.1fs", ms / 1000D);
+    }
+
+    private static String jsonString(@Nullable String str) {
+        if (str == null) return "null";
+
+        StringBuilder sb = new StringBuilder("\"");
+        for (char c : str.toCharArray()) {
+            switch (c) {
+                case '"':
+                    sb.append("\\\"");
+                    break;
+                case '\\':
+                    sb.append("\\\\");
+                    break;
+                default:
+                    if (c < 0x20) {
+                        sb.append(String.format("\\u%04x", (int) c));
+                    } else {
+                        sb.append(c);
+                    }
+            }
+        }
+        return sb.append('"').toString();
+    }
+
+    /**
+     * Runs a phase, possibly reporting it elsewhere.
+     */
+    public interface PhaseRunner {
+
+        PhaseRunner DIRECT = new PhaseRunner() {
+            @Override
+            public <T> T run(PublishMetrics metrics, String name, Phase<T> action) throws IOException {
+                return action.run();
+            }
+        };
+
+        <T> T run(PublishMetrics metrics, String name, Phase<T> action) throws IOException;
+    }
+
+    public interface Phase<T> {
+
+        T run() throws IOException;
+    }
+
+    /**
+     * The result of a phase, as reported to Gradle build operation listeners.
+     */
+    public static final class PhaseResult {
+
+        public final String phase;
+        public final long millis;
+        public final PublishMetrics metrics;
+
+        PhaseResult(String phase, long nanos, PublishMetrics metrics) {
+            this.phase = phase;
+            millis = millis(nanos);
+            this.metrics = metrics;
+        }
+
+        public String getPhase() {
+            return phase;
+        }
+
+        public long getMillis() {
+            return millis;
+        }
+
+        /**
+         * @return All metrics collected so far, for the whole publish.
+         */
+        public PublishMetrics getMetrics() {
+            return metrics;
+        }
+    }
+
+    private static final class EntryMetrics {
+
+        public final String name;
+        public volatile String method = "unknown";
+        public volatile long size;
+        public volatile long compressedSize;
+        public volatile long prepareNanos;
+        public volatile long writeNanos;
+
+        private EntryMetrics(String name) {
+            this.name = name;
+        }
+
+        private void prepared(BundleEntry entry, long nanos) {
+            method = entry.method == java.util.zip.ZipEntry.STORED ? "stored" : "deflated";
+            size = entry.size;
+            compressedSize = entry.compressedSize;
+            prepareNanos = nanos;
+        }
+    }
+}
@@ -1,41 +1,52 @@
 package net.covers1624.gcp;
 
-import org.gradle.api.DefaultTask;
 import org.gradle.api.InvalidUserDataException;
-import org.gradle.api.artifacts.PublishException;
 import org.gradle.api.credentials.PasswordCredentials;
-import org.gradle.api.file.FileCollection;
+import org.gradle.api.file.RegularFileProperty;
 import org.gradle.api.provider.Property;
-import org.gradle.api.publish.maven.MavenPublication;
-import org.gradle.api.publish.maven.internal.publication.MavenPublicationInternal;
-import org.gradle.api.publish.maven.internal.publisher.MavenNormalizedPublication;
+import org.gradle.api.provider.ProviderFactory;
 import org.gradle.api.tasks.*;
 
-import java.util.concurrent.Callable;
+import java.time.Duration;
 
 /**
+ * Publishes one or more publications to the central publishing portal.
+ * <p>
+ * If {@link #getBundle()} is set, this task only uploads the bundle created by {@link CreateCentralBundleTask}.
+ * Otherwise, the bundle is assembled from the publications and streamed directly into the upload.
+ * <p>
+ * Publications are captured as {@link PublicationSpec}s at configuration time, so this
+ * task is compatible with the configuration cache. The publish itself runs as a worker action.
+ * <p>
  * Created by covers1624 on 3/4/24.
  */
 @UntrackedTask (because = "This task uploads to Maven Central. There is nothing to cache.")
-public abstract class PublishToCentralTask extends DefaultTask {
+public abstract class PublishToCentralTask extends AbstractBundleTask {
 
-    private final Property<MavenPublicationInternal> publication = getProject().getObjects().property(MavenPublicationInternal.class);
-    private final Property<String> publishingType = getProject().getObjects().property(String.class);
-    private final Property<PasswordCredentials> credentials = getProject().getObjects().property(PasswordCredentials.class);
+    private final RegularFileProperty bundle = getObjects().fileProperty();
+    private final Property<String> publishingType = getObjects().property(String.class);
+    private final Property<PasswordCredentials> credentials = getObjects().property(PasswordCredentials.class);
+    private final Property<CentralPortalService> portal = getObjects().property(CentralPortalService.class);
+    private final Property<ReleaseTrainService> releaseTrain = getObjects().property(ReleaseTrainService.class);
+    private final Property<String> waitForState = getObjects().property(String.class);
+    private final Property<Duration> waitTimeout = getObjects().property(Duration.class).convention(Duration.ofMinutes(30));
 
     public PublishToCentralTask() {
+        // Registered as an input, so the task creating the bundle is inferred as a dependency.
         getInputs()
-                .files((Callable<FileCollection>) () -> {
-                    MavenPublicationInternal publication = (MavenPublicationInternal) getPublication();
-                    return publication != null ? publication.getPublishableArtifacts().getFiles() : null;
-                })
-                .withPropertyName("publication.publishableFiles")
-                .withPathSensitivity(PathSensitivity.NAME_ONLY);
+                .file(bundle)
+                .withPropertyName("bundle")
+                .withPathSensitivity(PathSensitivity.NONE)
+                .optional();
     }
 
+    /**
+     * The bundle to upload. If absent, the bundle is assembled from {@link #getPublications()}
+     * and streamed into the upload, without being written to disk.
+     */
     @Internal
-    public MavenPublication getPublication() {
-        return publication.get();
+    public RegularFileProperty getBundle() {
+        return bundle;
     }
 
     @Internal
@@ -43,17 +54,44 @@ public abstract class PublishToCentralTask extends DefaultTask {
         return publishingType;
     }
 
+    /**
+     * The credentials for the publishing portal. Should be sourced from {@link ProviderFactory#credentials},
+     * so they are not stored in the configuration cache.
+     */
     @Internal
     public Property<PasswordCredentials> getCredentials() {
         return credentials;
     }
 
+    @Internal
+    public Property<CentralPortalService> getPortal() {
+        return portal;
+    }
+
+    @Internal
+    public Property<ReleaseTrainService> getReleaseTrain() {
+        return releaseTrain;
+    }
+
+    /**
+     * If present, the task will wait for the deployment to reach the given {@link DeploymentState}
+     * before completing, failing if the deployment fails.
+     */
+    @Internal
+    public Property<String> getWaitForState() {
+        return waitForState;
+    }
+
+    /**
+     * The maximum time to wait for the deployment to reach {@link #getWaitForState()}.
+     */
+    @Internal
+    public Property<Duration> getWaitTimeout() {
+        return waitTimeout;
+    }
+
     @TaskAction
     public void publish() {
-        MavenPublicationInternal pub = publication.getOrNull();
-        if (pub == null) throw new InvalidUserDataException("Property 'publication' is required.");
-        MavenNormalizedPublication normalPub = pub.asNormalisedPublication();
-
         PasswordCredentials credentials = getCredentials().getOrNull();
         if (credentials == null) throw new InvalidUserDataException("Property 'credentials' is required.");
         if (credentials.getUsername() == null) throw new InvalidUserDataException("Property 'credentials.username' is required.");
@@ -62,18 +100,27 @@ public abstract class PublishToCentralTask extends DefaultTask {
         String publishingType = getPublishingType().getOrNull();
         if (publishingType == null) throw new InvalidUserDataException("Property 'publishingType' is required.");
 
-        try {
-            SimplePublicationValidator.validatePublication(normalPub);
-            CentralPublisher.publish(normalPub, credentials, publishingType, getTemporaryDir().toPath());
-        } catch (Throwable ex) {
-            throw new PublishException("Failed to publish " + normalPub.getName() + " to central publishing portal.", ex);
+        String waitFor = getWaitForState().getOrNull();
+        if (waitFor != null) {
+            DeploymentState.parse(waitFor);
         }
-    }
 
-    public void setPublication(MavenPublication publication) {
-        if (publication != null && !(publication instanceof MavenPublicationInternal)) {
-            throw new InvalidUserDataException("Expected MavenPublicationInternal. Got: " + publication.getClass().getName());
-        }
-        this.publication.set(((MavenPublicationInternal) publication));
+        // No isolation, the worker shares this build's services.
+        getWorkerExecutor().noIsolation().submit(PublishWorkAction.class, params -> {
+            if (getBundle().isPresent()) {
+                // Only uploading, nothing to assemble or sign.
+                configureWork(params);
+            } else {
+                configureAssembly(params);
+            }
+            params.getBundle().set(getBundle());
+            params.getPublishingType().set(publishingType);
+            // Worker parameters are isolated, which requires a serializable copy.
+            params.getCredentials().set(getCredentials().map(SimplePasswordCredentials::copyOf));
+            params.getPortal().set(getPortal());
+            params.getReleaseTrain().set(getReleaseTrain());
+            params.getWaitForState().set(waitFor);
+            params.getWaitTimeout().set(getWaitTimeout());
+        });
     }
 }
@@ -0,0 +1,104 @@
+package net.covers1624.gcp;
+
+import org.gradle.api.artifacts.PublishException;
+import org.gradle.api.credentials.PasswordCredentials;
+import org.gradle.api.file.RegularFileProperty;
+import org.gradle.api.logging.Logger;
+import org.gradle.api.logging.Logging;
+import org.gradle.api.model.ObjectFactory;
+import org.gradle.api.provider.Property;
+import org.gradle.workers.WorkAction;
+import org.jetbrains.annotations.ApiStatus;
+
+import javax.inject.Inject;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.List;
+
+/**
+ * Uploads, and optionally awaits, a bundle on behalf of {@link PublishToCentralTask}.
+ * Either a bundle written by {@link CreateCentralBundleTask}, or one assembled and streamed directly into the upload.
+ * <p>
+ * Must be run without isolation, as it shares the build's {@link CentralPortalService},
+ * {@link ReleaseTrainService} and {@link ChecksumCacheService}.
+ * <p>
+ * Created by covers1624 on 18/10/26.
+ */
+@ApiStatus.Internal
+public abstract class PublishWorkAction implements WorkAction<PublishWorkAction.Parameters> {
+
+    private static final Logger LOGGER = Logging.getLogger(PublishWorkAction.class);
+
+    @Inject
+    protected abstract ObjectFactory getObjects();
+
+    @Override
+    public void execute() {
+        Parameters params = getParameters();
+        String names = params.getPublicationNames().get();
+        PasswordCredentials credentials = params.getCredentials().get();
+        SonatypeApi api = params.getPortal().get().getApi();
+        ReleaseTrainService train = params.getReleaseTrain().get();
+        Path tempDir = params.getTemporaryDir().get().getAsFile().toPath();
+        String publishingType = params.getPublishingType().get();
+
+        String waitFor = params.getWaitForState().getOrNull();
+        DeploymentState waitForState = waitFor != null ? DeploymentState.parse(waitFor) : null;
+
+        PublishMetrics metrics = new PublishMetrics(BuildOperationPhaseRunner.create(getObjects(), params.getTaskPath().get()));
+        UploadScheduler scheduler = train.scheduler(params.getPublicationCoordinates().get(), credentials);
+        try {
+            String deploymentId;
+            try (UploadProgressLogger progress = BuildOperationPhaseRunner.progressLogger(getObjects(), "Uploading " + names)) {
+                if (params.getBundle().isPresent()) {
+                    // Already validated and assembled by CreateCentralBundleTask, the assembly parameters are not set.
+                    deploymentId = CentralPublisher.publishBundle(params.getBundle().get().getAsFile().toPath(), api, credentials, publishingType, tempDir, metrics, scheduler, progress);
+                } else {
+                    List<PublicationSpec> publications = params.getPublications().get();
+                    CreateBundleWorkAction.validate(publications, metrics);
+                    ArtifactSigner signer = CreateBundleWorkAction.loadSigner(params);
+                    deploymentId = CentralPublisher.publish(publications, api, credentials, publishingType, params.getCompression().get(), CreateBundleWorkAction.getCache(params), signer, tempDir, params.getAssemblyParallelism().get(), params.getVerifyChecksums().get(), metrics, scheduler, progress);
+                }
+            }
+            if (waitForState != null) {
+                LOGGER.lifecycle("Waiting for deployment {} to reach {}..", deploymentId, waitForState);
+                try (DeploymentStatusPoller poller = new DeploymentStatusPoller(api, credentials, DeploymentStatusPoller.DEFAULT_BACKOFF, 1)) {
+                    DeploymentStatus status = metrics.phase(PublishMetrics.AWAIT, () -> Utils.join(poller.await(deploymentId, waitForState, params.getWaitTimeout().get())));
+                    train.deploymentState(deploymentId, status.state);
+                } catch (PublishException ex) {
+                    // The deployment failed, the next run should upload again.
+                    train.deploymentState(deploymentId, DeploymentState.FAILED);
+                    DeploymentRecord.forget(tempDir);
+                    throw ex;
+                }
+                LOGGER.lifecycle("Deployment {} reached {}.", deploymentId, waitForState);
+            }
+        } catch (Throwable ex) {
+            throw new PublishException("Failed to publish " + names + " to central publishing portal.", ex);
+        } finally {
+            CreateBundleWorkAction.writeReport(metrics, params.getReportFile().get().getAsFile().toPath());
+        }
+        LOGGER.lifecycle(metrics.summary());
+    }
+
+    public interface Parameters extends CreateBundleWorkAction.AssemblyParameters {
+
+        /**
+         * A bundle written by {@link CreateCentralBundleTask}. If absent, the bundle
+         * is assembled from the publications and streamed into the upload.
+         */
+        RegularFileProperty getBundle();
+
+        Property<String> getPublishingType();
+
+        Property<PasswordCredentials> getCredentials();
+
+        Property<CentralPortalService> getPortal();
+
+        Property<ReleaseTrainService> getReleaseTrain();
+
+        Property<String> getWaitForState();
+
+        Property<Duration> getWaitTimeout();
+    }
+}
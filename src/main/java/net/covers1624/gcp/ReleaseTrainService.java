@@ -0,0 +1,374 @@
+package net.covers1624.gcp;
+
+import org.gradle.api.credentials.PasswordCredentials;
+import org.gradle.api.file.RegularFileProperty;
+import org.gradle.api.logging.Logger;
+import org.gradle.api.logging.Logging;
+import org.gradle.api.provider.Property;
+import org.gradle.api.services.BuildService;
+import org.gradle.api.services.BuildServiceParameters;
+import org.jetbrains.annotations.ApiStatus;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.*;
+
+/**
+ * Coordinates uploads from every publish task in the build.
+ * <p>
+ * Uploads are queued, smallest bundle first, and only allowed to start while fewer than
+ * {@code maxConcurrentUploads} are in progress, and fewer than {@code maxOutstandingDeployments}
+ * deployments are still being processed by the portal. Deployments are considered outstanding
+ * until they are validated, or fail.
+ * <p>
+ * A publication whose upload fails, even after {@link SonatypeApi}'s own retries, is re-queued
+ * behind all fresh uploads, up to {@code maxPublicationRetries} times. Only failures where the portal
+ * can not have accepted the bundle are re-queued, see {@link UploadNotAcceptedException}.
+ * <p>
+ * Deployments whose status can't be polled, such as with bad credentials, are no longer waited on.
+ * If a deployment is still outstanding {@code deploymentTimeout} after it was uploaded, uploads waiting
+ * on it fail.
+ * <p>
+ * When the build finishes, a single summary of all deployments is logged, and written to {@code summaryFile}.
+ * <p>
+ * Created by covers1624 on 18/10/26.
+ */
+@ApiStatus.Internal
+public abstract class ReleaseTrainService implements BuildService<ReleaseTrainService.Parameters>, AutoCloseable {
+
+    public static final String NAME = "centralPublisherReleaseTrain";
+
+    private static final Logger LOGGER = Logging.getLogger(ReleaseTrainService.class);
+
+    private static final long POLL_INTERVAL = 5000;
+
+    private final Object lock = new Object();
+    private final PriorityQueue<Ticket> queue = new PriorityQueue<>(
+            Comparator.<Ticket>comparingInt(e -> e.publication.failures)
+                    .thenComparingLong(e -> e.bytes)
+                    .thenComparingLong(e -> e.sequence)
+    );
+    private final Map<String, PublicationState> publications = new LinkedHashMap<>();
+    private final Map<String, Deployment> outstanding = new LinkedHashMap<>();
+    private long sequence;
+    private int uploading;
+
+    /**
+     * Get a scheduler for the given publication.
+     *
+     * @param publication The name of the publication, or publications, being uploaded.
+     * @param credentials The credentials used for the upload, used to check on the deployment afterward.
+     * @return The scheduler.
+     */
+    public UploadScheduler scheduler(String publication, PasswordCredentials credentials) {
+        PublicationState state;
+        synchronized (lock) {
+            state = publications.computeIfAbsent(publication, PublicationState::new);
+        }
+        return (bytes, upload) -> upload(state, credentials, bytes, upload);
+    }
+
+    /**
+     * Notify the train that a deployment reached the given state.
+     *
+     * @param deploymentId The deployment id.
+     * @param state        The state.
+     */
+    public void deploymentState(String deploymentId, DeploymentState state) {
+        synchronized (lock) {
+            for (PublicationState publication : publications.values()) {
+                if (deploymentId.equals(publication.deploymentId)) {
+                    publication.state = state;
+                }
+            }
+            if (isSettled(state) && outstanding.remove(deploymentId) != null) {
+                lock.notifyAll();
+            }
+        }
+    }
+
+    private String upload(PublicationState state, PasswordCredentials credentials, long bytes, UploadScheduler.Upload upload) throws IOException {
+        int maxRetries = getParameters().getMaxPublicationRetries().get();
+        while (true) {
+            try {
+                acquire(state, bytes);
+            } catch (IOException ex) {
+                synchronized (lock) {
+                    state.error = ex.getMessage();
+                }
+                throw ex;
+            }
+            String deploymentId = null;
+            try {
+                synchronized (lock) {
+                    state.attempts++;
+                }
+                deploymentId = upload.run();
+                return deploymentId;
+            } catch (IOException ex) {
+                synchronized (lock) {
+                    state.failures++;
+                    state.error = ex.getMessage();
+                }
+                if (state.failures > maxRetries || !(ex instanceof UploadNotAcceptedException)) throw ex;
+                LOGGER.warn("Upload of {} failed, re-queueing. ({}/{}) {}", state.name, state.failures, maxRetries, ex.getMessage());
+            } finally {
+                release(state, credentials, deploymentId);
+            }
+        }
+    }
+
+    private void acquire(PublicationState state, long bytes) throws IOException {
+        int maxUploads = getParameters().getMaxConcurrentUploads().get();
+        int maxOutstanding = getParameters().getMaxOutstandingDeployments().get();
+        Ticket ticket;
+        synchronized (lock) {
+            ticket = new Ticket(state, bytes < 0 ? Long.MAX_VALUE : bytes, sequence++);
+            queue.add(ticket);
+        }
+        boolean acquired = false;
+        try {
+            boolean waited = false;
+            while (true) {
+                boolean pollDeployments;
+                synchronized (lock) {
+                    boolean next = queue.peek() == ticket;
+                    boolean uploadFree = maxUploads <= 0 || uploading < maxUploads;
+                    boolean deploymentFree = maxOutstanding <= 0 || outstanding.size() < maxOutstanding;
+                    if (next && uploadFree && deploymentFree) {
+                        queue.remove();
+                        uploading++;
+                        acquired = true;
+                        // The next ticket may also be able to go.
+                        lock.notifyAll();
+                        return;
+                    }
+                    if (!waited) {
+                        waited = true;
+                        LOGGER.info("Queued upload of {}, {} uploading, {} deployments outstanding.", state.name, uploading, outstanding.size());
+                    }
+                    // Only the head of the queue checks on deployments, everyone else just waits their turn.
+                    pollDeployments = next && uploadFree;
+                    if (!pollDeployments) {
+                        lock.wait();
+                    }
+                }
+                if (pollDeployments) {
+                    pollOutstanding(state);
+                }
+            }
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted whilst waiting to upload.");
+        } finally {
+            if (!acquired) {
+                synchronized (lock) {
+                    queue.remove(ticket);
+                    lock.notifyAll();
+                }
+            }
+        }
+    }
+
+    private void release(PublicationState state, PasswordCredentials credentials, @Nullable String deploymentId) {
+        long deadline = System.nanoTime() + getParameters().getDeploymentTimeout().get().toNanos();
+        synchronized (lock) {
+            uploading--;
+            if (deploymentId != null) {
+                state.deploymentId = deploymentId;
+                state.state = DeploymentState.PENDING;
+                state.error = null;
+                outstanding.put(deploymentId, new Deployment(state, credentials, deadline));
+            }
+            lock.notifyAll();
+        }
+    }
+
+    // Checks the state of every outstanding deployment, then waits for a while if none have settled.
+    // Fails if a deployment is still outstanding after its deadline.
+    private void pollOutstanding(PublicationState waiting) throws IOException, InterruptedException {
+        Map<String, Deployment> toPoll;
+        synchronized (lock) {
+            toPoll = new LinkedHashMap<>(outstanding);
+        }
+        SonatypeApi api = getParameters().getPortal().get().getApi();
+        boolean settled = false;
+        for (Map.Entry<String, Deployment> entry : toPoll.entrySet()) {
+            String id = entry.getKey();
+            Deployment deployment = entry.getValue();
+            try {
+                DeploymentStatus status = api.getDeploymentStatus(deployment.credentials, id);
+                deploymentState(id, status.state);
+                if (isSettled(status.state)) {
+                    settled = true;
+                    continue;
+                }
+            } catch (IOException ex) {
+                if (!SonatypeApi.isRetryable(ex, false)) {
+                    abandon(id, deployment, ex);
+                    settled = true;
+                    continue;
+                }
+                LOGGER.warn("Failed to poll status of deployment {}. {}", id, ex.getMessage());
+            } catch (RuntimeException ex) {
+                abandon(id, deployment, ex);
+                settled = true;
+                continue;
+            }
+            if (System.nanoTime() - deployment.deadline > 0) {
+                throw new IOException("Timed out waiting for deployment " + id + " of " + deployment.publication.name + " to be validated, before uploading " + waiting.name + ".");
+            }
+        }
+        if (!settled) {
+            synchronized (lock) {
+                // Woken early if a publish task sees its deployment settle.
+                lock.wait(POLL_INTERVAL);
+            }
+        }
+    }
+
+    // Stops waiting on a deployment whose status can't be polled, retrying would not help.
+    private void abandon(String id, Deployment deployment, Exception ex) {
+        LOGGER.warn("Failed to poll status of deployment {}, no longer waiting for it. {}", id, ex.getMessage());
+        synchronized (lock) {
+            if (id.equals(deployment.publication.deploymentId)) {
+                deployment.publication.error = "Failed to poll status. " + ex.getMessage();
+            }
+            if (outstanding.remove(id) != null) {
+                lock.notifyAll();
+            }
+        }
+    }
+
+    private static boolean isSettled(DeploymentState state) {
+        return state.hasReached(DeploymentState.VALIDATED) || state == DeploymentState.FAILED;
+    }
+
+    @Override
+    public void close() {
+        List<PublicationState> states;
+        synchronized (lock) {
+            states = new ArrayList<>(publications.values());
+        }
+        if (states.isEmpty()) return;
+
+        StringBuilder sb = new StringBuilder("Release train summary:");
+        for (PublicationState state : states) {
+            sb.append("\n  ").append(state.name).append(": ");
+            if (state.deploymentId != null) {
+                sb.append(state.deploymentId).append(" (").append(state.state).append(")");
+            } else {
+                sb.append("not uploaded");
+                if (state.error != null) {
+                    sb.append(", ").append(state.error.split("\n")[0]);
+                }
+            }
+            if (state.attempts > 1) {
+                sb.append(", ").append(state.attempts).append(" attempts");
+            }
+        }
+        LOGGER.lifecycle(sb.toString());
+
+        Path file = getParameters().getSummaryFile().get().getAsFile().toPath();
+        try {
+            writeSummary(states, file);
+        } catch (IOException ex) {
+            LOGGER.warn("Failed to write release train summary to {}", file, ex);
+        }
+    }
+
+    private static void writeSummary(List<PublicationState> states, Path file) throws IOException {
+        Files.createDirectories(file.getParent());
+        try (BufferedWriter w = Files.newBufferedWriter(file, StandardCharsets.UTF_8)) {
+            w.write("{\n  \"publications\": [");
+            for (int i = 0; i < states.size(); i++) {
+                PublicationState state = states.get(i);
+                w.write(i == 0 ? "\n" : ",\n");
+                w.write("    { \"name\": " + quote(state.name));
+                w.write(", \"deploymentId\": " + quote(state.deploymentId));
+                w.write(", \"state\": " + quote(state.state != null ? state.state.name() : null));
+                w.write(", \"attempts\": " + state.attempts);
+                w.write(", \"error\": " + quote(state.error) + " }");
+            }
+            w.write("\n  ]\n}\n");
+        }
+    }
+
+    private static String quote(@Nullable String str) {
+        if (str == null) return "null";
+        return "\"" + str.replace("\\", "\\\\").replace("\"", "\\\"").replace("\n", "\\n") + "\"";
+    }
+
+    private static final class PublicationState {
+
+        public final String name;
+        public int attempts;
+        public int failures;
+        public @Nullable String error;
+        public @Nullable String deploymentId;
+        public @Nullable DeploymentState state;
+
+        private PublicationState(String name) {
+            this.name = name;
+        }
+    }
+
+    private static final class Deployment {
+
+        public final PublicationState publication;
+        public final PasswordCredentials credentials;
+        public final long deadline;
+
+        private Deployment(PublicationState publication, PasswordCredentials credentials, long deadline) {
+            this.publication = publication;
+            this.credentials = credentials;
+            this.deadline = deadline;
+        }
+    }
+
+    private static final class Ticket {
+
+        public final PublicationState publication;
+        public final long bytes;
+        public final long sequence;
+
+        private Ticket(PublicationState publication, long bytes, long sequence) {
+            this.publication = publication;
+            this.bytes = bytes;
+            this.sequence = sequence;
+        }
+    }
+
+    public interface Parameters extends BuildServiceParameters {
+
+        Property<CentralPortalService> getPortal();
+
+        /**
+         * The maximum number of uploads at once, {@code 0} for no limit.
+         */
+        Property<Integer> getMaxConcurrentUploads();
+
+        /**
+         * The maximum number of deployments which may be uploaded but not yet validated, {@code 0} for no limit.
+         */
+        Property<Integer> getMaxOutstandingDeployments();
+
+        /**
+         * The maximum number of times a publication is re-queued after its upload fails.
+         */
+        Property<Integer> getMaxPublicationRetries();
+
+        /**
+         * How long after its upload a deployment may remain outstanding, before uploads waiting on it fail.
+         */
+        Property<Duration> getDeploymentTimeout();
+
+        RegularFileProperty getSummaryFile();
+    }
+}
@@ -0,0 +1,24 @@
+package net.covers1624.gcp;
+
+import org.gradle.api.credentials.PasswordCredentials;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.Serializable;
+
+/**
+ * Created by covers1624 on 3/4/24.
+ */
+// @formatter:off
+final class SimplePasswordCredentials implements PasswordCredentials, Serializable {
+    private static final long serialVersionUID = 1L;
+    private @Nullable String username;
+    private @Nullable String password;
+    public SimplePasswordCredentials() { }
+    public SimplePasswordCredentials(@Nullable String username, @Nullable String password) { this.username = username; this.password = password; }
+    public static SimplePasswordCredentials copyOf(PasswordCredentials other) { return new SimplePasswordCredentials(other.getUsername(), other.getPassword()); }
+    @Override public @Nullable String getUsername() { return username; }
+    @Override public @Nullable String getPassword() { return password; }
+    @Override public void setUsername(@Nullable String username) { this.username = username; }
+    @Override public void setPassword(@Nullable String password) { this.password = password; }
+}
+// @formatter:on
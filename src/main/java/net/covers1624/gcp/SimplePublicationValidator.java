@@ -1,21 +1,15 @@
 package net.covers1624.gcp;
 
-import org.apache.maven.model.Model;
-import org.apache.maven.model.io.xpp3.MavenXpp3Reader;
-import org.codehaus.plexus.util.xml.pull.XmlPullParserException;
 import org.gradle.api.publish.maven.InvalidMavenPublicationException;
-import org.gradle.api.publish.maven.MavenArtifact;
-import org.gradle.api.publish.maven.MavenPublication;
-import org.gradle.api.publish.maven.internal.publisher.MavenNormalizedPublication;
 import org.gradle.api.publish.maven.internal.publisher.ValidatingMavenPublisher;
+import org.jetbrains.annotations.Nullable;
 
+import javax.xml.stream.XMLStreamException;
 import java.io.File;
-import java.io.FileReader;
 import java.io.IOException;
-import java.util.ArrayList;
 import java.util.List;
 import java.util.Objects;
-import java.util.Set;
+import java.util.regex.Pattern;
 
 /**
  * Heavily simplified implementation of {@link ValidatingMavenPublisher}.
@@ -24,79 +18,101 @@ import java.util.Set;
  */
 class SimplePublicationValidator {
 
-    private static final String VALID_REGEX = "[A-Za-z0-9_\\-.]+";
+    private static final Pattern VALID_IDENTIFIER = Pattern.compile("[A-Za-z0-9_\\-.]+");
 
-    public static void validatePublication(MavenNormalizedPublication pub) {
+    public static void validatePublication(PublicationSpec pub) {
         validatePom(pub);
         validateArtifacts(pub);
     }
 
-    private static void validatePom(MavenNormalizedPublication pub) {
-        Model model;
-        File pomFile = pub.getPomArtifact().getFile();
-        try (FileReader reader = new FileReader(pomFile)) {
-            model = new MavenXpp3Reader().read(reader);
-            model.setPomFile(pomFile);
-        } catch (IOException | XmlPullParserException ex) {
-            throw new InvalidMavenPublicationException(pub.getName(), "POM file is malformed.", ex);
+    private static void validatePom(PublicationSpec pub) {
+        PomMetadata pom;
+        File pomFile = pub.pomFile;
+        validateIsFileAndExists(pub, pomFile);
+        try {
+            pom = PomMetadata.read(pomFile.toPath());
+        } catch (IOException | XMLStreamException ex) {
+            throw new InvalidMavenPublicationException(pub.name, "POM file is malformed.", ex);
         }
 
         // The following pom properties must be valid identifiers for maven, and equal the publication data:
         // - Artifact Id
-        // - Group, only if there is no parent.
-        // - Version, only if there is no parent.
+        // - Group, only if present or there is no parent.
+        // - Version, only if present or there is no parent.
 
-        validateIdentifier(pub, "Artifact Id", pub.getArtifactId(), model.getArtifactId(), true);
-        validateIdentifier(pub, "Group Id", pub.getGroupId(), model.getGroupId(), model.getParent() == null);
+        validateIdentifier(pub, "Artifact Id", pub.artifactId, pom.artifactId, true);
+        validateIdentifier(pub, "Group Id", pub.groupId, pom.groupId, pom.groupId != null || !pom.hasParent);
 
-        if (pub.getVersion().isEmpty()) throw new InvalidMavenPublicationException(pub.getName(), "Version can't be empty.");
-        validateIdentifier(pub, "Version", pub.getVersion(), model.getVersion(), model.getParent() == null);
-        validateFileNameable(pub, "Version", pub.getVersion());
+        if (pub.version.isEmpty()) throw new InvalidMavenPublicationException(pub.name, "Version can't be empty.");
+        validateIdentifier(pub, "Version", pub.version, pom.version, pom.version != null || !pom.hasParent);
+        validateFileNameable(pub, "Version", pub.version);
+
+        // Central requires the following metadata, they may be inherited from a parent.
+        if (pom.hasParent) return;
+
+        requireElement(pub, "name", pom.name);
+        requireElement(pub, "description", pom.description);
+        requireElement(pub, "url", pom.url);
+        if (pom.licenses.isEmpty()) throw missingElement(pub, "licenses/license");
+        for (String license : pom.licenses) {
+            requireElement(pub, "licenses/license/name", license);
+        }
+        if (pom.developers == 0) throw missingElement(pub, "developers/developer");
+        if (!pom.hasScm) throw missingElement(pub, "scm");
+        requireElement(pub, "scm/url", pom.scmUrl);
+    }
+
+    private static void requireElement(PublicationSpec pub, String element, @Nullable String value) {
+        if (value == null || value.isEmpty()) throw missingElement(pub, element);
+    }
+
+    private static InvalidMavenPublicationException missingElement(PublicationSpec pub, String element) {
+        return new InvalidMavenPublicationException(pub.name, "POM is missing <" + element + ">, which is required by Central.");
     }
 
-    private static void validateArtifacts(MavenNormalizedPublication pub) {
-        List<MavenArtifact> artifacts = new ArrayList<>(pub.getAllArtifacts());
+    private static void validateArtifacts(PublicationSpec pub) {
+        List<PublicationSpec.ArtifactSpec> artifacts = pub.artifacts;
         for (int i = 0; i < artifacts.size(); i++) {
-            MavenArtifact artifact = artifacts.get(i);
-            String ext = artifact.getExtension();
-            String cls = artifact.getClassifier();
-            if (ext.isEmpty()) throw new InvalidMavenPublicationException(pub.getName(), "Artifact extension can't be empty.");
+            PublicationSpec.ArtifactSpec artifact = artifacts.get(i);
+            String ext = artifact.extension;
+            String cls = artifact.classifier;
+            if (ext.isEmpty()) throw new InvalidMavenPublicationException(pub.name, "Artifact extension can't be empty.");
             validateFileNameable(pub, "Artifact extension", ext);
             if (cls != null) {
-                if (cls.isEmpty()) throw new InvalidMavenPublicationException(pub.getName(), "Artifact classifier can't be empty if present.");
+                if (cls.isEmpty()) throw new InvalidMavenPublicationException(pub.name, "Artifact classifier can't be empty if present.");
                 validateFileNameable(pub, "Artifact classifier", cls);
             }
-            validateIsFileAndExists(pub, artifact.getFile());
+            validateIsFileAndExists(pub, artifact.file);
             // Ensure the artifact isn't a duplicate of any others.
             // We only need to check the remaining artifacts, as this check is 2 way.
             for (int j = i + 1; j < artifacts.size(); j++) {
-                MavenArtifact other = artifacts.get(j);
-                if (Objects.equals(ext, other.getExtension()) && Objects.equals(cls, other.getClassifier())) {
-                    throw new InvalidMavenPublicationException(pub.getName(), "Multiple artifacts with the same extension and classifier. " + ext + " " + cls);
+                PublicationSpec.ArtifactSpec other = artifacts.get(j);
+                if (Objects.equals(ext, other.extension) && Objects.equals(cls, other.classifier)) {
+                    throw new InvalidMavenPublicationException(pub.name, "Multiple artifacts with the same extension and classifier. " + ext + " " + cls);
                 }
             }
         }
     }
 
-    private static void validateIsFileAndExists(MavenNormalizedPublication pub, File file) {
-        if (file == null || !file.exists()) throw new InvalidMavenPublicationException(pub.getName(), "Artifact file " + file + " does not exist.");
+    private static void validateIsFileAndExists(PublicationSpec pub, File file) {
+        if (file == null || !file.exists()) throw new InvalidMavenPublicationException(pub.name, "Artifact file " + file + " does not exist.");
         if (file.isDirectory()) {
-            throw new InvalidMavenPublicationException(pub.getName(), "Artifact file " + file + " must be a file. Not a directory.");
+            throw new InvalidMavenPublicationException(pub.name, "Artifact file " + file + " must be a file. Not a directory.");
         }
     }
 
-    private static void validateIdentifier(MavenNormalizedPublication pub, String what, String publicationValue, String modelValue, boolean requireEqual) {
-        if (!publicationValue.matches(VALID_REGEX)) throw new InvalidMavenPublicationException(pub.getName(), "Invalid " + what + "." + publicationValue);
-        if (requireEqual && !publicationValue.equals(modelValue)) throw new InvalidMavenPublicationException(pub.getName(), what + " does not match pom. " + publicationValue + " " + modelValue);
+    private static void validateIdentifier(PublicationSpec pub, String what, String publicationValue, @Nullable String modelValue, boolean requireEqual) {
+        if (!VALID_IDENTIFIER.matcher(publicationValue).matches()) throw new InvalidMavenPublicationException(pub.name, "Invalid " + what + "." + publicationValue);
+        if (requireEqual && !publicationValue.equals(modelValue)) throw new InvalidMavenPublicationException(pub.name, what + " does not match pom. " + publicationValue + " " + modelValue);
     }
 
-    private static void validateFileNameable(MavenNormalizedPublication pub, String what, String value) {
+    private static void validateFileNameable(PublicationSpec pub, String what, String value) {
         if (value == null || value.isEmpty()) return;
 
         int u;
         for (int i = 0; i < value.length(); i += Character.charCount(u)) {
             u = value.codePointAt(i);
-            if (Character.isISOControl(u)) throw new InvalidMavenPublicationException(pub.getName(), String.format("%s contains ISC control character. \\u%04x", what, u));
+            if (Character.isISOControl(u)) throw new InvalidMavenPublicationException(pub.name, String.format("%s contains ISC control character. \\u%04x", what, u));
         }
     }
 }
@@ -1,22 +1,39 @@
 package net.covers1624.gcp;
 
+import org.apache.http.Header;
 import org.apache.http.HttpEntity;
+import org.apache.http.NoHttpResponseException;
 import org.apache.http.client.methods.CloseableHttpResponse;
 import org.apache.http.client.methods.HttpPost;
+import org.apache.http.client.methods.HttpUriRequest;
+import org.apache.http.client.utils.DateUtils;
+import org.apache.http.conn.ConnectTimeoutException;
 import org.apache.http.entity.ContentType;
 import org.apache.http.entity.mime.MultipartEntityBuilder;
+import org.apache.http.entity.mime.content.ContentBody;
 import org.apache.http.entity.mime.content.FileBody;
 import org.apache.http.impl.client.CloseableHttpClient;
-import org.apache.http.impl.client.HttpClients;
 import org.gradle.api.credentials.PasswordCredentials;
+import org.gradle.api.logging.Logger;
+import org.gradle.api.logging.Logging;
 import org.jetbrains.annotations.ApiStatus;
+import org.jetbrains.annotations.Nullable;
 
 import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.net.ConnectException;
+import java.net.NoRouteToHostException;
+import java.net.SocketException;
+import java.net.SocketTimeoutException;
+import java.net.URLEncoder;
 import java.nio.charset.StandardCharsets;
 import java.nio.file.Path;
 import java.util.Base64;
+import java.util.Date;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
 
 /**
  * Created by covers1624 on 3/4/24.
@@ -24,25 +41,193 @@ import java.util.Base64;
 @ApiStatus.Internal
 class SonatypeApi {
 
-    private static final String API = "https://central.sonatype.com/api";
-
-    public static String uploadBundle(PasswordCredentials credentials, Path bundle, String publishingType) throws IOException {
-        try (CloseableHttpClient client = HttpClients.createDefault()) {
-            HttpPost post = new HttpPost(API + "/v1/publisher/upload?publishingType=" + publishingType);
-            post.addHeader("Authorization", "Bearer " + authBase64(credentials));
-            post.setEntity(MultipartEntityBuilder.create()
-                    .addPart("bundle", new FileBody(bundle.toFile(), ContentType.APPLICATION_OCTET_STREAM))
-                    .build()
-            );
-            try (CloseableHttpResponse response = client.execute(post)) {
-                String body = readBody(response);
-                if (response.getStatusLine().getStatusCode() != 201) {
-                    throw new IOException("Failed to upload. Got: " + response.getStatusLine() + "\n" + body);
+    private static final Logger LOGGER = Logging.getLogger(SonatypeApi.class);
+
+    /**
+     * The api of the real Central Publisher Portal.
+     */
+    public static final String DEFAULT_ENDPOINT = "https://central.sonatype.com/api";
+
+    /**
+     * The longest {@code Retry-After} which is honoured, longer requests are cut short.
+     */
+    private static final long MAX_RETRY_AFTER = TimeUnit.MINUTES.toMillis(5);
+
+    private final CloseableHttpClient client;
+    private final String endpoint;
+    private final int maxRetries;
+    private final Backoff backoff;
+    private final @Nullable Throttle throttle;
+
+    private final AtomicLong requests = new AtomicLong();
+    private final AtomicLong requestNanos = new AtomicLong();
+
+    /**
+     * @param client     The client to use. Owned by the caller.
+     * @param endpoint   The base url of the portal's api.
+     * @param maxRetries The maximum number of times to retry an upload after a transient failure.
+     * @param backoff    The backoff between retries, used when the server does not specify {@code Retry-After}.
+     */
+    public SonatypeApi(CloseableHttpClient client, String endpoint, int maxRetries, Backoff backoff) {
+        this(client, endpoint, maxRetries, backoff, 0);
+    }
+
+    /**
+     * @param client                  The client to use. Owned by the caller.
+     * @param endpoint                The base url of the portal's api.
+     * @param maxRetries              The maximum number of times to retry an upload after a transient failure.
+     * @param backoff                 The backoff between retries, used when the server does not specify {@code Retry-After}.
+     * @param maxUploadBytesPerSecond The maximum rate of all uploads through this api combined, or {@code 0} for no limit.
+     */
+    public SonatypeApi(CloseableHttpClient client, String endpoint, int maxRetries, Backoff backoff, long maxUploadBytesPerSecond) {
+        this.client = client;
+        this.endpoint = endpoint.endsWith("/") ? endpoint.substring(0, endpoint.length() - 1) : endpoint;
+        this.maxRetries = maxRetries;
+        this.backoff = backoff;
+        throttle = maxUploadBytesPerSecond > 0 ? new Throttle(maxUploadBytesPerSecond) : null;
+    }
+
+    public String uploadBundle(PasswordCredentials credentials, Path bundle, String publishingType) throws IOException {
+        return uploadBundle(credentials, new FileBody(bundle.toFile(), ContentType.APPLICATION_OCTET_STREAM), publishingType);
+    }
+
+    /**
+     * Upload the given bundle, retrying on transient failures.
+     * <p>
+     * The bundle body must be repeatable.
+     */
+    public String uploadBundle(PasswordCredentials credentials, ContentBody bundle, String publishingType) throws IOException {
+        return uploadBundle(credentials, bundle, publishingType, null);
+    }
+
+    /**
+     * Upload the given bundle, retrying on transient failures, and reporting progress to the given listener.
+     * <p>
+     * Failures are only retried if the portal can not have created a deployment from the request,
+     * see {@link #isRetryable}. If such a failure persists after all retries, an {@link UploadNotAcceptedException}
+     * is thrown, any other failure is thrown as is.
+     * <p>
+     * The upload is limited to this api's maximum upload rate, if any.
+     * <p>
+     * The bundle body must be repeatable.
+     */
+    public String uploadBundle(PasswordCredentials credentials, ContentBody bundle, String publishingType, ThrottledHttpEntity.@Nullable Listener listener) throws IOException {
+        HttpPost post = new HttpPost(endpoint + "/v1/publisher/upload?publishingType=" + publishingType);
+        post.addHeader("Authorization", "Bearer " + authBase64(credentials));
+        HttpEntity entity = MultipartEntityBuilder.create()
+                .addPart("bundle", bundle)
+                .build();
+        for (int attempt = 0; ; attempt++) {
+            ThrottledHttpEntity body = new ThrottledHttpEntity(entity, throttle, listener);
+            post.setEntity(body);
+            try {
+                return execute(post, 201, "upload");
+            } catch (IOException ex) {
+                if (!isRetryable(ex, body.isFullyWritten())) throw ex;
+                if (attempt >= maxRetries) {
+                    throw new UploadNotAcceptedException("Upload failed after " + (attempt + 1) + " attempts. " + ex.getMessage(), ex);
                 }
 
-                return body;
+                long delay = backoff.delay(attempt);
+                if (ex instanceof PortalResponseException && ((PortalResponseException) ex).retryAfterMillis >= 0) {
+                    delay = Math.min(((PortalResponseException) ex).retryAfterMillis, MAX_RETRY_AFTER);
+                }
+                LOGGER.warn("Upload failed, retrying in {}ms. ({}/{}) {}", delay, attempt + 1, maxRetries, ex.getMessage());
+                try {
+                    Thread.sleep(delay);
+                } catch (InterruptedException ie) {
+                    Thread.currentThread().interrupt();
+                    throw new InterruptedIOException("Interrupted whilst waiting to retry upload.");
+                }
+            }
+        }
+    }
+
+    public DeploymentStatus getDeploymentStatus(PasswordCredentials credentials, String deploymentId) throws IOException {
+        HttpPost post = new HttpPost(endpoint + "/v1/publisher/status?id=" + URLEncoder.encode(deploymentId, "UTF-8"));
+        post.addHeader("Authorization", "Bearer " + authBase64(credentials));
+        return DeploymentStatus.parse(deploymentId, execute(post, 200, "get deployment status"));
+    }
+
+    /**
+     * @return The base url of the portal's api.
+     */
+    public String getEndpoint() {
+        return endpoint;
+    }
+
+    /**
+     * @return The number of requests made through this api.
+     */
+    public long getRequestCount() {
+        return requests.get();
+    }
+
+    /**
+     * @return The total time spent in requests made through this api, in milliseconds.
+     */
+    public long getRequestMillis() {
+        return TimeUnit.NANOSECONDS.toMillis(requestNanos.get());
+    }
+
+    private String execute(HttpUriRequest request, int expectedStatus, String what) throws IOException {
+        long start = System.nanoTime();
+        try (CloseableHttpResponse response = client.execute(request)) {
+            String body = readBody(response);
+            long nanos = System.nanoTime() - start;
+            requests.incrementAndGet();
+            requestNanos.addAndGet(nanos);
+            int status = response.getStatusLine().getStatusCode();
+            LOGGER.info("{} {} -> {} in {}ms", request.getMethod(), request.getURI().getPath(), status, TimeUnit.NANOSECONDS.toMillis(nanos));
+            if (status != expectedStatus) {
+                throw new PortalResponseException("Failed to " + what + ". Got: " + response.getStatusLine() + "\n" + body, status, retryAfter(response));
             }
+
+            return body.trim();
+        }
+    }
+
+    /**
+     * If a request which failed with the given exception may be retried.
+     * <p>
+     * Only failures known to be temporary are retried: error responses the portal marks as such,
+     * failures to connect, and connections which were reset or timed out before the request body
+     * was fully sent. Once the body has been sent, the portal may have acted on the request even
+     * though no response arrived, so only a response can tell it is safe to retry.
+     * <p>
+     * Everything else, such as unknown hosts, TLS failures, or failures reading the bundle, is permanent.
+     *
+     * @param ex       The failure.
+     * @param bodySent If the request body had been fully sent.
+     * @return If the request may be retried.
+     */
+    static boolean isRetryable(IOException ex, boolean bodySent) {
+        if (ex instanceof PortalResponseException) return ((PortalResponseException) ex).isTransient();
+        if (isConnectFailure(ex)) return true;
+        if (bodySent) return false;
+        return ex instanceof SocketTimeoutException || ex instanceof SocketException || ex instanceof NoHttpResponseException;
+    }
+
+    /**
+     * @param ex The failure.
+     * @return If the failure happened whilst connecting, before any of the request was sent.
+     */
+    static boolean isConnectFailure(IOException ex) {
+        return ex instanceof ConnectException || ex instanceof ConnectTimeoutException || ex instanceof NoRouteToHostException;
+    }
+
+    private static long retryAfter(CloseableHttpResponse response) {
+        Header header = response.getFirstHeader("Retry-After");
+        if (header == null) return -1;
+
+        String value = header.getValue().trim();
+        try {
+            return TimeUnit.SECONDS.toMillis(Long.parseLong(value));
+        } catch (NumberFormatException ignored) {
         }
+        Date date = DateUtils.parseDate(value);
+        if (date == null) return -1;
+        return Math.max(0, date.getTime() - System.currentTimeMillis());
     }
 
     private static String authBase64(PasswordCredentials credentials) {
@@ -0,0 +1,53 @@
+package net.covers1624.gcp;
+
+import java.io.InterruptedIOException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Limits the rate bytes are sent at, across all threads sharing the throttle.
+ * <p>
+ * Each write is scheduled after all previous writes, so concurrent uploads
+ * share the limit between them, instead of each getting the full rate.
+ * <p>
+ * Created by covers1624 on 18/10/26.
+ */
+class Throttle {
+
+    private final long bytesPerSecond;
+    // The System.nanoTime() at which the next write may begin.
+    private long next = System.nanoTime();
+
+    /**
+     * @param bytesPerSecond The maximum number of bytes per second.
+     */
+    public Throttle(long bytesPerSecond) {
+        if (bytesPerSecond <= 0) throw new IllegalArgumentException("Expected a positive rate, got " + bytesPerSecond);
+        this.bytesPerSecond = bytesPerSecond;
+    }
+
+    /**
+     * Wait until the given number of bytes may be sent.
+     *
+     * @param bytes The number of bytes about to be sent.
+     */
+    public void acquire(int bytes) throws InterruptedIOException {
+        long wait;
+        synchronized (this) {
+            long now = System.nanoTime();
+            // Idle time does not build up into a burst.
+            if (next - now < 0) {
+                next = now;
+            }
+            wait = next - now;
+            next += TimeUnit.SECONDS.toNanos(bytes) / bytesPerSecond;
+        }
+        if (wait <= 0) return;
+
+        try {
+            TimeUnit.NANOSECONDS.sleep(wait);
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted whilst throttling upload.");
+        }
+    }
+}
@@ -0,0 +1,102 @@
+package net.covers1624.gcp;
+
+import org.apache.http.HttpEntity;
+import org.apache.http.entity.HttpEntityWrapper;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Wraps a request entity, counting the bytes written, reporting progress and
+ * optionally limiting the rate they are written at.
+ * <p>
+ * Data is passed straight through in small chunks, nothing is buffered, so memory
+ * use does not depend on the size of the entity.
+ * <p>
+ * Created by covers1624 on 18/10/26.
+ */
+class ThrottledHttpEntity extends HttpEntityWrapper {
+
+    // Small enough that throttled writes are smooth, large enough not to matter otherwise.
+    private static final int CHUNK_SIZE = 16 * 1024;
+    private static final long REPORT_INTERVAL = TimeUnit.MILLISECONDS.toNanos(250);
+
+    private final @Nullable Throttle throttle;
+    private final @Nullable Listener listener;
+    private volatile boolean fullyWritten;
+
+    public ThrottledHttpEntity(HttpEntity entity, @Nullable Throttle throttle, @Nullable Listener listener) {
+        super(entity);
+        this.throttle = throttle;
+        this.listener = listener;
+    }
+
+    @Override
+    public void writeTo(OutputStream out) throws IOException {
+        fullyWritten = false;
+        long total = getContentLength();
+        long start = System.nanoTime();
+        long[] written = { 0 };
+        long[] lastReport = { start };
+        if (listener != null) {
+            listener.progress(0, total, 0);
+        }
+        wrappedEntity.writeTo(new FilterOutputStream(out) {
+            @Override
+            public void write(int b) throws IOException {
+                write(new byte[] { (byte) b }, 0, 1);
+            }
+
+            @Override
+            public void write(byte[] b, int off, int len) throws IOException {
+                while (len > 0) {
+                    int n = Math.min(len, CHUNK_SIZE);
+                    if (throttle != null) {
+                        throttle.acquire(n);
+                    }
+                    out.write(b, off, n);
+                    off += n;
+                    len -= n;
+                    written[0] += n;
+
+                    long now = System.nanoTime();
+                    if (listener != null && now - lastReport[0] >= REPORT_INTERVAL) {
+                        lastReport[0] = now;
+                        listener.progress(written[0], total, now - start);
+                    }
+                }
+            }
+        });
+        fullyWritten = true;
+        if (listener != null) {
+            listener.progress(written[0], total, System.nanoTime() - start);
+        }
+    }
+
+    /**
+     * @return If the entity has been completely written by the last call to {@link #writeTo}.
+     */
+    public boolean isFullyWritten() {
+        return fullyWritten;
+    }
+
+    /**
+     * Receives progress of an upload.
+     */
+    public interface Listener {
+
+        /**
+         * Called periodically whilst the entity is being written, and once when it has been fully written.
+         * <p>
+         * If the request is retried, progress starts again from zero.
+         *
+         * @param bytes The number of bytes written so far.
+         * @param total The total number of bytes, {@code -1} if unknown.
+         * @param nanos The time spent writing so far.
+         */
+        void progress(long bytes, long total, long nanos);
+    }
+}
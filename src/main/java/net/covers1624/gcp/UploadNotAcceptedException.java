@@ -0,0 +1,20 @@
+package net.covers1624.gcp;
+
+import java.io.IOException;
+
+/**
+ * Thrown when an upload gave up on a failure which happened before the Publisher Portal
+ * could have accepted the bundle, so uploading it again can not create a duplicate deployment.
+ * <p>
+ * Created by covers1624 on 18/10/26.
+ *
+ * @see SonatypeApi#isRetryable
+ */
+class UploadNotAcceptedException extends IOException {
+
+    private static final long serialVersionUID = 1L;
+
+    public UploadNotAcceptedException(String message, IOException cause) {
+        super(message, cause);
+    }
+}
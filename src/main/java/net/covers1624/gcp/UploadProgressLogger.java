@@ -0,0 +1,54 @@
+package net.covers1624.gcp;
+
+import org.gradle.internal.logging.progress.ProgressLogger;
+import org.gradle.internal.logging.progress.ProgressLoggerFactory;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.Closeable;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Shows the progress and rate of an upload in Gradle's console.
+ * <p>
+ * Created by covers1624 on 18/10/26.
+ */
+class UploadProgressLogger implements ThrottledHttpEntity.Listener, Closeable {
+
+    private final ProgressLoggerFactory factory;
+    private final String description;
+    private @Nullable ProgressLogger logger;
+    private @Nullable String status;
+
+    public UploadProgressLogger(ProgressLoggerFactory factory, String description) {
+        this.factory = factory;
+        this.description = description;
+    }
+
+    @Override
+    public synchronized void progress(long bytes, long total, long nanos) {
+        StringBuilder sb = new StringBuilder(PublishMetrics.formatBytes(bytes));
+        if (total > 0) {
+            sb.append(" / ").append(PublishMetrics.formatBytes(total));
+            sb.append(" (").append(bytes * 100 / total).append("%)");
+        }
+        if (nanos > 0) {
+            long rate = (long) (bytes / (nanos / (double) TimeUnit.SECONDS.toNanos(1)));
+            sb.append(" @ ").append(PublishMetrics.formatBytes(rate)).append("/s");
+        }
+        status = sb.toString();
+
+        if (logger == null) {
+            logger = factory.newOperation(UploadProgressLogger.class).start(description, status);
+        } else {
+            logger.progress(status);
+        }
+    }
+
+    @Override
+    public synchronized void close() {
+        if (logger != null) {
+            logger.completed(status, false);
+            logger = null;
+        }
+    }
+}
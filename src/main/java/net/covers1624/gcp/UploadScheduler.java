@@ -0,0 +1,35 @@
+package net.covers1624.gcp;
+
+import java.io.IOException;
+
+/**
+ * Decides when a bundle may be uploaded.
+ * <p>
+ * Created by covers1624 on 18/10/26.
+ *
+ * @see ReleaseTrainService
+ */
+interface UploadScheduler {
+
+    /**
+     * Upload immediately.
+     */
+    UploadScheduler DIRECT = (bytes, upload) -> upload.run();
+
+    /**
+     * Run the given upload once it may proceed.
+     *
+     * @param bytes  The size of the upload, {@code -1} if unknown.
+     * @param upload The upload.
+     * @return The deployment id.
+     */
+    String upload(long bytes, Upload upload) throws IOException;
+
+    interface Upload {
+
+        /**
+         * @return The deployment id.
+         */
+        String run() throws IOException;
+    }
+}
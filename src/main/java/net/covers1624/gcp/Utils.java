@@ -2,16 +2,37 @@ package net.covers1624.gcp;
 
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.security.MessageDigest;
 import java.security.NoSuchAlgorithmException;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
 
 /**
  * Created by covers1624 on 3/4/24.
  */
 class Utils {
 
+    /**
+     * The size of buffers used when copying or hashing artifacts.
+     */
+    public static final int BUFFER_SIZE = 64 * 1024;
+
+    /**
+     * Discards everything written to it.
+     */
+    public static final OutputStream NULL_OUTPUT = new OutputStream() {
+        @Override public void write(int b) { }
+        @Override public void write(byte[] b, int off, int len) { }
+    };
+
     private static final char[] HEX = "0123456789abcdef".toCharArray();
 
     public static String hashFile(String alg, Path file) throws IOException {
@@ -40,11 +61,47 @@ class Utils {
 
     public static void addToDigest(MessageDigest digest, Path file) throws IOException {
         try (InputStream is = Files.newInputStream(file)) {
-            byte[] buf = new byte[2048];
+            byte[] buf = new byte[BUFFER_SIZE];
             int len;
             while ((len = is.read(buf)) != -1) {
                 digest.update(buf, 0, len);
             }
         }
     }
+
+    public static void deleteDirectory(Path dir) throws IOException {
+        if (Files.notExists(dir)) return;
+
+        try (Stream<Path> files = Files.walk(dir)) {
+            List<Path> paths = files.sorted(Comparator.reverseOrder()).collect(Collectors.toList());
+            for (Path path : paths) {
+                Files.delete(path);
+            }
+        }
+    }
+
+    /**
+     * Wait for the given future to complete, unwrapping any exceptions it threw.
+     *
+     * @param future The future.
+     * @return The result.
+     */
+    public static <T> T join(Future<T> future) throws IOException {
+        try {
+            return future.get();
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted whilst waiting for task.");
+        } catch (ExecutionException ex) {
+            Throwable cause = ex.getCause();
+            // ForkJoinPool wraps checked exceptions thrown by Callables in plain RuntimeExceptions.
+            while (cause.getClass() == RuntimeException.class && cause.getCause() != null) {
+                cause = cause.getCause();
+            }
+            if (cause instanceof IOException) throw (IOException) cause;
+            if (cause instanceof RuntimeException) throw (RuntimeException) cause;
+            if (cause instanceof Error) throw (Error) cause;
+            throw new IOException(cause);
+        }
+    }
 }
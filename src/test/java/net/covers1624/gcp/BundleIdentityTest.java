@@ -0,0 +1,159 @@
+package net.covers1624.gcp;
+
+import org.apache.http.impl.client.CloseableHttpClient;
+import org.apache.http.impl.client.HttpClients;
+import org.gradle.api.artifacts.PublishException;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Tests that a bundle identical to the last deployment reuses it instead of uploading again,
+ * against a {@link LocalPortal}.
+ * <p>
+ * Created by covers1624 on 18/10/26.
+ */
+public class BundleIdentityTest {
+
+    private static final SimplePasswordCredentials CREDENTIALS = new SimplePasswordCredentials("user", "pass");
+
+    private final AtomicInteger uploads = new AtomicInteger();
+    private final UploadScheduler countingScheduler = (bytes, upload) -> {
+        uploads.incrementAndGet();
+        return upload.run();
+    };
+
+    private Path tempDir;
+    private LocalPortal portal;
+    private CloseableHttpClient client;
+    private SonatypeApi api;
+
+    @BeforeEach
+    public void setUp() throws IOException {
+        tempDir = Files.createTempDirectory("bundle-identity");
+        LocalPortalOptions options = new LocalPortalOptions();
+        options.stateDelay = Duration.ZERO;
+        portal = LocalPortal.start(options);
+        client = HttpClients.createDefault();
+        api = new SonatypeApi(client, portal.getEndpoint(), 0, new Backoff(20, 40));
+    }
+
+    @AfterEach
+    public void tearDown() throws IOException {
+        client.close();
+        portal.close();
+        Utils.deleteDirectory(tempDir);
+    }
+
+    @Test
+    public void testIdentityIsReproducible() throws IOException {
+        Path first = createBundle("first.zip", "<project/>");
+        Path second = createBundle("second.zip", "<project/>");
+        Path changed = createBundle("changed.zip", "<project></project>");
+
+        assertEquals(identity(first), identity(second));
+        assertFalse(identity(first).equals(identity(changed)), "Different content has the same identity.");
+    }
+
+    @Test
+    public void testIdenticalBundleSkipsUpload() throws IOException {
+        Path bundle = createBundle("bundle.zip", "<project/>");
+        String first = publishBundle(bundle, "USER_MANAGED", countingScheduler);
+        String second = publishBundle(createBundle("rebuilt.zip", "<project/>"), "USER_MANAGED", countingScheduler);
+
+        assertEquals(first, second);
+        assertEquals(1, uploads.get());
+    }
+
+    @Test
+    public void testPublishingTypeIsPartOfIdentity() throws IOException {
+        Path bundle = createBundle("bundle.zip", "<project/>");
+        String userManaged = publishBundle(bundle, "USER_MANAGED", countingScheduler);
+        String automatic = publishBundle(bundle, "AUTOMATIC", countingScheduler);
+
+        assertFalse(userManaged.equals(automatic), "Reused a deployment with a different publishing type.");
+        assertEquals(2, uploads.get());
+    }
+
+    @Test
+    public void testChangedBundleOverwritesRecord() throws IOException {
+        String first = publishBundle(createBundle("bundle.zip", "<project/>"), "USER_MANAGED", countingScheduler);
+        String second = publishBundle(createBundle("changed.zip", "<project></project>"), "USER_MANAGED", countingScheduler);
+
+        assertFalse(first.equals(second), "Reused a deployment for different content.");
+        assertEquals(2, uploads.get());
+        assertEquals(second, record().deploymentId);
+    }
+
+    @Test
+    public void testFailedUploadKeepsRecord() throws IOException {
+        String first = publishBundle(createBundle("bundle.zip", "<project/>"), "USER_MANAGED", countingScheduler);
+        DeploymentRecord before = record();
+
+        UploadScheduler failing = (bytes, upload) -> {
+            throw new IOException("Simulated failure.");
+        };
+        assertThrows(PublishException.class, () -> publishBundle(createBundle("changed.zip", "<project></project>"), "USER_MANAGED", failing));
+
+        DeploymentRecord after = record();
+        assertEquals(first, after.deploymentId);
+        assertEquals(before.bundleSha256, after.bundleSha256);
+    }
+
+    @Test
+    public void testForgetForcesUpload() throws IOException {
+        Path bundle = createBundle("bundle.zip", "<project/>");
+        publishBundle(bundle, "USER_MANAGED", countingScheduler);
+        DeploymentRecord.forget(tempDir);
+        publishBundle(bundle, "USER_MANAGED", countingScheduler);
+
+        assertEquals(2, uploads.get());
+    }
+
+    private Path createBundle(String name, String pom) throws IOException {
+        Path dir = Files.createDirectories(tempDir.resolve(name + "-artifacts"));
+        Path pomFile = dir.resolve("test-1.0.pom");
+        Path signatureFile = dir.resolve("test-1.0.pom.asc");
+        Files.write(pomFile, pom.getBytes(StandardCharsets.UTF_8));
+        // Signing is timestamped, so a fixed signature keeps the bundle reproducible.
+        Files.write(signatureFile, "Not really a signature.".getBytes(StandardCharsets.UTF_8));
+        PublicationSpec publication = new PublicationSpec("maven", "net.covers1624.test", "test", "1.0", pomFile.toFile(), Arrays.asList(
+                new PublicationSpec.ArtifactSpec(pomFile.toFile(), null, "pom"),
+                new PublicationSpec.ArtifactSpec(signatureFile.toFile(), null, "pom.asc")
+        ));
+
+        Path bundle = tempDir.resolve("bundles").resolve(name);
+        CentralPublisher.createBundle(Collections.singletonList(publication), new CompressionPolicy(), null, null, tempDir.resolve("work"), 1, false, bundle, metrics());
+        assertTrue(Files.exists(CentralPublisher.identityFile(bundle)), "Identity file not written.");
+        return bundle;
+    }
+
+    private String publishBundle(Path bundle, String publishingType, UploadScheduler scheduler) {
+        return CentralPublisher.publishBundle(bundle, api, CREDENTIALS, publishingType, tempDir, metrics(), scheduler, null);
+    }
+
+    private DeploymentRecord record() throws IOException {
+        DeploymentRecord record = DeploymentRecord.read(tempDir);
+        assertNotNull(record, "No deployment recorded.");
+        return record;
+    }
+
+    private static String identity(Path bundle) throws IOException {
+        return new String(Files.readAllBytes(CentralPublisher.identityFile(bundle)), StandardCharsets.UTF_8);
+    }
+
+    private static PublishMetrics metrics() {
+        return new PublishMetrics(PublishMetrics.PhaseRunner.DIRECT);
+    }
+}
@@ -0,0 +1,59 @@
+package net.covers1624.gcp;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.zip.ZipEntry;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Tests {@link BundleVerifier#verifyChecksums} against bundles with correct and incorrect checksums.
+ * <p>
+ * Created by covers1624 on 18/10/26.
+ */
+public class BundleVerifierTest {
+
+    private static final String NAME = "net/covers1624/test/1.0/test-1.0.pom";
+    private static final byte[] CONTENT = "<project/>".getBytes(StandardCharsets.UTF_8);
+
+    @Test
+    public void testValidChecksums() throws IOException {
+        BundleVerifier.verifyChecksums(bundle(BundleEntry.stored(NAME, CONTENT), hash("SHA-256")), 1);
+    }
+
+    @Test
+    public void testWrongSha256File() {
+        IOException ex = assertThrows(IOException.class, () -> BundleVerifier.verifyChecksums(bundle(BundleEntry.stored(NAME, CONTENT), hash("SHA-1")), 1));
+        assertTrue(ex.getMessage().contains(NAME + ".sha256"), ex.getMessage());
+    }
+
+    @Test
+    public void testWrongEntryHash() {
+        BundleEntry good = BundleEntry.stored(NAME, CONTENT);
+        BundleEntry bad = new BundleEntry(NAME, ZipEntry.STORED, good.crc, good.size, good.compressedSize, hash("SHA-1"), () -> new ByteArrayInputStream(CONTENT));
+        IOException ex = assertThrows(IOException.class, () -> BundleVerifier.verifyChecksums(bundle(bad, hash("SHA-256")), 1));
+        assertTrue(ex.getMessage().startsWith("SHA-256 mismatch for " + NAME), ex.getMessage());
+    }
+
+    // The entry, with correct md5 and sha1 checksum files, and a sha256 checksum file with the given content.
+    private static List<BundleEntry> bundle(BundleEntry entry, String sha256File) {
+        List<BundleEntry> entries = new ArrayList<>();
+        entries.add(entry);
+        entries.add(BundleEntry.stored(NAME + ".md5", hash("MD5").getBytes(StandardCharsets.UTF_8)));
+        entries.add(BundleEntry.stored(NAME + ".sha1", hash("SHA-1").getBytes(StandardCharsets.UTF_8)));
+        entries.add(BundleEntry.stored(NAME + ".sha256", sha256File.getBytes(StandardCharsets.UTF_8)));
+        return entries;
+    }
+
+    private static String hash(String alg) {
+        MessageDigest digest = Utils.getDigest(alg);
+        digest.update(CONTENT);
+        return Utils.finishHash(digest);
+    }
+}
@@ -0,0 +1,74 @@
+package net.covers1624.gcp;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Tests reading, writing and forgetting a {@link DeploymentRecord}.
+ * <p>
+ * Created by covers1624 on 18/10/26.
+ */
+public class DeploymentRecordTest {
+
+    private Path tempDir;
+
+    @BeforeEach
+    public void setUp() throws IOException {
+        tempDir = Files.createTempDirectory("deployment-record");
+    }
+
+    @AfterEach
+    public void tearDown() throws IOException {
+        Utils.deleteDirectory(tempDir);
+    }
+
+    @Test
+    public void testRoundTrip() throws IOException {
+        new DeploymentRecord("abc123", "deployment-1").write(tempDir);
+
+        DeploymentRecord record = DeploymentRecord.read(tempDir);
+        assertNotNull(record);
+        assertEquals("abc123", record.bundleSha256);
+        assertEquals("deployment-1", record.deploymentId);
+    }
+
+    @Test
+    public void testOverwrite() throws IOException {
+        new DeploymentRecord("abc123", "deployment-1").write(tempDir);
+        new DeploymentRecord("def456", "deployment-2").write(tempDir);
+
+        DeploymentRecord record = DeploymentRecord.read(tempDir);
+        assertNotNull(record);
+        assertEquals("def456", record.bundleSha256);
+        assertEquals("deployment-2", record.deploymentId);
+    }
+
+    @Test
+    public void testMissingFile() throws IOException {
+        assertNull(DeploymentRecord.read(tempDir));
+    }
+
+    @Test
+    public void testMissingDeploymentId() throws IOException {
+        Files.write(DeploymentRecord.file(tempDir), "bundle.sha256=abc123\n".getBytes(StandardCharsets.UTF_8));
+        assertNull(DeploymentRecord.read(tempDir));
+    }
+
+    @Test
+    public void testForget() throws IOException {
+        new DeploymentRecord("abc123", "deployment-1").write(tempDir);
+        DeploymentRecord.forget(tempDir);
+
+        assertNull(DeploymentRecord.read(tempDir));
+        // Forgetting nothing is fine.
+        DeploymentRecord.forget(tempDir);
+    }
+}
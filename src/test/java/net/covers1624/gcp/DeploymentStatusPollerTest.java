@@ -0,0 +1,187 @@
+package net.covers1624.gcp;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import org.apache.http.impl.client.CloseableHttpClient;
+import org.apache.http.impl.client.HttpClients;
+import org.gradle.api.artifacts.PublishException;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.*;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Tests {@link DeploymentStatusPoller} against a stub status endpoint.
+ * <p>
+ * Created by covers1624 on 18/10/26.
+ */
+public class DeploymentStatusPollerTest {
+
+    private static final SimplePasswordCredentials CREDENTIALS = new SimplePasswordCredentials("user", "pass");
+    private static final Backoff FAST_BACKOFF = new Backoff(20, 40);
+
+    // Responses served in order, the last one repeats.
+    private final Deque<Response> responses = new ArrayDeque<>();
+    private final List<Long> requestTimes = Collections.synchronizedList(new ArrayList<>());
+
+    private HttpServer server;
+    private CloseableHttpClient client;
+    private SonatypeApi api;
+
+    @BeforeEach
+    public void setUp() throws IOException {
+        server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), 0);
+        server.createContext("/api/v1/publisher/status", this::handle);
+        server.start();
+        client = HttpClients.createDefault();
+        api = new SonatypeApi(client, "http://127.0.0.1:" + server.getAddress().getPort() + "/api", 0, FAST_BACKOFF);
+    }
+
+    @AfterEach
+    public void tearDown() throws IOException {
+        client.close();
+        server.stop(0);
+    }
+
+    @Test
+    public void testReachesTargetState() throws Exception {
+        respond(200, "PENDING");
+        respond(200, "VALIDATING");
+        respond(200, "VALIDATED");
+
+        DeploymentStatus status = await(DeploymentState.VALIDATED, Duration.ofSeconds(10));
+        assertEquals(DeploymentState.VALIDATED, status.state);
+        assertEquals(3, requestTimes.size());
+    }
+
+    @Test
+    public void testLaterStateSatisfiesTarget() throws Exception {
+        respond(200, "PUBLISHED");
+
+        DeploymentStatus status = await(DeploymentState.VALIDATED, Duration.ofSeconds(10));
+        assertEquals(DeploymentState.PUBLISHED, status.state);
+    }
+
+    @Test
+    public void testFailedDeployment() {
+        respond(200, "PENDING");
+        respond(200, "FAILED");
+
+        Throwable cause = awaitFailure(DeploymentState.PUBLISHED, Duration.ofSeconds(10));
+        assertTrue(cause instanceof PublishException, cause.toString());
+        assertEquals(2, requestTimes.size());
+    }
+
+    @Test
+    public void testTimeout() {
+        respond(200, "PENDING");
+
+        Throwable cause = awaitFailure(DeploymentState.VALIDATED, Duration.ofMillis(300));
+        assertTrue(cause instanceof TimeoutException, cause.toString());
+        assertTrue(requestTimes.size() > 1, "Expected multiple polls before timing out.");
+    }
+
+    @Test
+    public void testBacksOffOnServerErrors() throws Exception {
+        Backoff backoff = new Backoff(100, 400);
+        respond(503, null);
+        respond(503, null);
+        respond(503, null);
+        respond(200, "VALIDATED");
+
+        DeploymentStatus status = await(backoff, DeploymentState.VALIDATED, Duration.ofSeconds(10));
+        assertEquals(DeploymentState.VALIDATED, status.state);
+        assertEquals(4, requestTimes.size());
+        // Each delay is between half and all of 100ms * 2^attempt.
+        for (int i = 1; i < requestTimes.size(); i++) {
+            long gap = TimeUnit.NANOSECONDS.toMillis(requestTimes.get(i) - requestTimes.get(i - 1));
+            long min = (100L << (i - 1)) / 2;
+            assertTrue(gap >= min, "Poll " + i + " after " + gap + "ms, expected at least " + min + "ms.");
+        }
+    }
+
+    @Test
+    public void testBadCredentialsFailFast() {
+        respond(401, null);
+
+        Throwable cause = awaitFailure(DeploymentState.VALIDATED, Duration.ofSeconds(10));
+        assertTrue(cause instanceof IOException, cause.toString());
+        assertTrue(cause.getCause() instanceof PortalResponseException, String.valueOf(cause.getCause()));
+        assertEquals(1, requestTimes.size());
+    }
+
+    @Test
+    public void testUnknownStateFailsFast() {
+        respond(200, "SOMETHING_NEW");
+
+        Throwable cause = awaitFailure(DeploymentState.VALIDATED, Duration.ofSeconds(10));
+        assertTrue(cause instanceof IOException, cause.toString());
+        assertEquals(1, requestTimes.size());
+    }
+
+    private DeploymentStatus await(DeploymentState target, Duration timeout) throws Exception {
+        return await(FAST_BACKOFF, target, timeout);
+    }
+
+    private DeploymentStatus await(Backoff backoff, DeploymentState target, Duration timeout) throws Exception {
+        try (DeploymentStatusPoller poller = new DeploymentStatusPoller(api, CREDENTIALS, backoff, 1)) {
+            return poller.await("test-deployment", target, timeout).get(30, TimeUnit.SECONDS);
+        }
+    }
+
+    private Throwable awaitFailure(DeploymentState target, Duration timeout) {
+        ExecutionException ex = assertThrows(ExecutionException.class, () -> await(target, timeout));
+        return ex.getCause();
+    }
+
+    private void respond(int status, String state) {
+        synchronized (responses) {
+            responses.add(new Response(status, state));
+        }
+    }
+
+    private void handle(HttpExchange ex) throws IOException {
+        try {
+            requestTimes.add(System.nanoTime());
+            Response response;
+            synchronized (responses) {
+                response = responses.size() > 1 ? responses.poll() : responses.peek();
+            }
+            assertNotNull(response, "No response configured.");
+            if (!"test-deployment".equals(ex.getRequestURI().getQuery().replace("id=", ""))) {
+                ex.sendResponseHeaders(404, 0);
+                return;
+            }
+            String json = response.state != null
+                    ? "{\"deploymentId\":\"test-deployment\",\"deploymentState\":\"" + response.state + "\"}"
+                    : "{\"error\":\"stub error\"}";
+            byte[] body = json.getBytes(StandardCharsets.UTF_8);
+            ex.sendResponseHeaders(response.status, body.length);
+            ex.getResponseBody().write(body);
+        } finally {
+            ex.close();
+        }
+    }
+
+    private static final class Response {
+
+        public final int status;
+        public final String state;
+
+        private Response(int status, String state) {
+            this.status = status;
+            this.state = state;
+        }
+    }
+}